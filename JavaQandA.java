@@ -1173,6 +1173,259 @@ public class OrderServiceDemo {
         System.out.println(order);
     }
 }
+	
+Circuit Breaker + Bulkhead around remote legs:-
+	-If fetchPaymentStatus stalls, every supplyAsync() thread piles up on it and the healthy legs (order, shipping) get slow too.
+	-Circuit Breaker: stop calling a dependency that keeps failing, return a fallback immediately.
+		CLOSED    → calls go through, outcomes recorded in a sliding window (last N calls).
+		OPEN      → failure rate or slow-call rate crossed the threshold, calls fail fast until waitInOpen elapses.
+		HALF_OPEN → a few trial calls are allowed; if they succeed → CLOSED, if any fails → OPEN again.
+	-Bulkhead: cap the number of concurrent calls per dependency (Semaphore.tryAcquire, no queueing).
+	-Both are lock-free: state is an AtomicReference swapped with compareAndSet, window is an AtomicIntegerArray ring.
+	 The snapshot carries everything that belongs to the state: HALF_OPEN trial permits + successes, and a fresh
+	 window for each CLOSED period → state and budget are published by one CAS, late results can't corrupt a new window.
+	-State transitions are counted (LongAdder per transition) so they can be exported as metrics (no logging on the call path).
+	Example:-
+
+	import java.util.*;
+	import java.util.concurrent.*;
+	import java.util.concurrent.atomic.*;
+	import java.util.function.Supplier;
+
+	class CircuitBreaker {
+
+	    enum State { CLOSED, OPEN, HALF_OPEN }
+
+	    // Outcome ring of one CLOSED period; a new one per CLOSED state, so late writers never touch the new window
+	    private static final class Window {
+	        final AtomicIntegerArray ring;
+	        final AtomicLong cursor = new AtomicLong();
+	        final AtomicInteger failures = new AtomicInteger();
+	        final AtomicInteger slowCalls = new AtomicInteger();
+
+	        Window(int size) { ring = new AtomicIntegerArray(size); }
+	    }
+
+	    // State + time it was entered + its budget, swapped atomically as one object:
+	    // HALF_OPEN permits and successes are published together with the state, never reset after it
+	    private static final class Snapshot {
+	        final State state;
+	        final long since;
+	        final Window window;           // CLOSED only
+	        final int permits;             // HALF_OPEN: trial calls still allowed
+	        final int successes;           // HALF_OPEN: trial calls that succeeded
+
+	        Snapshot(State state, long since, Window window, int permits, int successes) {
+	            this.state = state;
+	            this.since = since;
+	            this.window = window;
+	            this.permits = permits;
+	            this.successes = successes;
+	        }
+	    }
+
+	    private static final int SUCCESS = 1, FAILURE = 2, SLOW = 3;
+
+	    private final String name;
+	    private final int windowSize;                 // count-based sliding window
+	    private final int minCalls;                   // don't judge before this many calls
+	    private final double failureRateThreshold;
+	    private final double slowRateThreshold;
+	    private final long slowCallNanos;
+	    private final long waitInOpenNanos;
+	    private final int halfOpenCalls;
+
+	    private final AtomicReference<Snapshot> state;
+
+	    // Metrics: "CLOSED->OPEN" -> count
+	    private final Map<String, LongAdder> transitions = new ConcurrentHashMap<>();
+
+	    CircuitBreaker(String name, int windowSize, int minCalls, double failureRateThreshold,
+	                   double slowRateThreshold, long slowCallMs, long waitInOpenMs, int halfOpenCalls) {
+	        this.name = name;
+	        this.windowSize = windowSize;
+	        this.minCalls = minCalls;
+	        this.failureRateThreshold = failureRateThreshold;
+	        this.slowRateThreshold = slowRateThreshold;
+	        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallMs);
+	        this.waitInOpenNanos = TimeUnit.MILLISECONDS.toNanos(waitInOpenMs);
+	        this.halfOpenCalls = halfOpenCalls;
+	        this.state = new AtomicReference<>(closed());
+	    }
+
+	    // Returns false when the call must fail fast
+	    boolean tryAcquirePermission() {
+	        while (true) {
+	            Snapshot s = state.get();
+	            switch (s.state) {
+	                case CLOSED:
+	                    return true;
+	                case OPEN:
+	                    if (System.nanoTime() - s.since < waitInOpenNanos) return false;
+	                    transition(s, new Snapshot(State.HALF_OPEN, System.nanoTime(), null, halfOpenCalls, 0));
+	                    break;                                  // won or lost, re-read the new state
+	                default:                                    // HALF_OPEN: only a limited number of trial calls
+	                    if (s.permits == 0) return false;
+	                    if (state.compareAndSet(s, new Snapshot(State.HALF_OPEN, s.since, null, s.permits - 1, s.successes))) {
+	                        return true;
+	                    }
+	            }
+	        }
+	    }
+
+	    void onResult(long durationNanos, boolean success) {
+	        int outcome = !success ? FAILURE : durationNanos >= slowCallNanos ? SLOW : SUCCESS;
+
+	        while (true) {
+	            Snapshot s = state.get();
+	            if (s.state == State.OPEN) return;
+	            if (s.state == State.CLOSED) {
+	                record(s, outcome);
+	                return;
+	            }
+	            // HALF_OPEN: any failed or slow trial reopens, enough successes close
+	            if (outcome != SUCCESS) {
+	                if (transition(s, new Snapshot(State.OPEN, System.nanoTime(), null, 0, 0))) return;
+	            } else if (s.successes + 1 >= halfOpenCalls) {
+	                if (transition(s, closed())) return;
+	            } else if (state.compareAndSet(s, new Snapshot(State.HALF_OPEN, s.since, null, s.permits, s.successes + 1))) {
+	                return;
+	            }
+	        }
+	    }
+
+	    // Ring buffer: overwrite the oldest outcome and adjust the running counts
+	    private void record(Snapshot s, int outcome) {
+	        Window w = s.window;
+	        long seq = w.cursor.getAndIncrement();
+	        int old = w.ring.getAndSet((int) (seq % windowSize), outcome);
+	        if (old == FAILURE) w.failures.decrementAndGet();
+	        if (old == SLOW) w.slowCalls.decrementAndGet();
+	        if (outcome == FAILURE) w.failures.incrementAndGet();
+	        if (outcome == SLOW) w.slowCalls.incrementAndGet();
+
+	        long calls = Math.min(seq + 1, windowSize);
+	        if (calls < minCalls) return;
+	        double failureRate = w.failures.get() * 100.0 / calls;
+	        double slowRate = w.slowCalls.get() * 100.0 / calls;
+	        if (failureRate >= failureRateThreshold || slowRate >= slowRateThreshold) {
+	            transition(s, new Snapshot(State.OPEN, System.nanoTime(), null, 0, 0));
+	        }
+	    }
+
+	    private Snapshot closed() {
+	        return new Snapshot(State.CLOSED, System.nanoTime(), new Window(windowSize), 0, 0);
+	    }
+
+	    // Only the thread whose CAS wins performs (and counts) the transition
+	    private boolean transition(Snapshot from, Snapshot to) {
+	        if (state.compareAndSet(from, to)) {
+	            transitions.computeIfAbsent(from.state + "->" + to.state, k -> new LongAdder()).increment();
+	            return true;
+	        }
+	        return false;
+	    }
+
+	    State getState() { return state.get().state; }
+
+	    Map<String, Long> transitionMetrics() {
+	        Map<String, Long> out = new TreeMap<>();
+	        transitions.forEach((k, v) -> out.put("circuit_transitions{name=" + name + ",transition=" + k + "}", v.sum()));
+	        return out;
+	    }
+	}
+
+	class Bulkhead {
+	    private final String name;
+	    private final Semaphore permits;
+	    final LongAdder rejected = new LongAdder();
+
+	    Bulkhead(String name, int maxConcurrentCalls) {
+	        this.name = name;
+	        this.permits = new Semaphore(maxConcurrentCalls);
+	    }
+
+	    boolean tryEnter() {
+	        if (permits.tryAcquire()) return true;   // no waiting → fail fast
+	        rejected.increment();
+	        return false;
+	    }
+
+	    void exit() { permits.release(); }
+	}
+
+	// Wraps one remote leg: bulkhead first, then circuit breaker, fallback on any rejection/failure
+	class ResilientCall {
+	    private final CircuitBreaker breaker;
+	    private final Bulkhead bulkhead;
+
+	    ResilientCall(CircuitBreaker breaker, Bulkhead bulkhead) {
+	        this.breaker = breaker;
+	        this.bulkhead = bulkhead;
+	    }
+
+	    CircuitBreaker breaker() { return breaker; }
+	    Bulkhead bulkhead() { return bulkhead; }
+
+	    <T> T call(Supplier<T> remote, Supplier<T> fallback) {
+	        if (!bulkhead.tryEnter()) return fallback.get();
+	        try {
+	            if (!breaker.tryAcquirePermission()) return fallback.get();
+	            long start = System.nanoTime();
+	            boolean success = false;
+	            try {
+	                T result = remote.get();
+	                success = true;
+	                return result;
+	            } catch (RuntimeException e) {
+	                return fallback.get();
+	            } finally {
+	                // Always report, an Error included: a lost result would leak a HALF_OPEN permit for good
+	                breaker.onResult(System.nanoTime() - start, success);
+	            }
+	        } finally {
+	            bulkhead.exit();
+	        }
+	    }
+	}
+
+	public class ResilientOrderServiceDemo {
+
+	    static final ResilientCall PAYMENT = new ResilientCall(
+	            new CircuitBreaker("payment", 20, 10, 50.0, 80.0, 300, 2000, 3),
+	            new Bulkhead("payment", 4));
+
+	    static String fetchPaymentStatus(String orderId) {
+	        sleep(700);   // backend is stalling → every call is a slow call
+	        return "PAID";
+	    }
+
+	    static String fetchPaymentStatusSafe(String orderId) {
+	        return PAYMENT.call(() -> fetchPaymentStatus(orderId), () -> "PAYMENT_STATUS_UNKNOWN");
+	    }
+
+	    static void sleep(int ms) {
+	        try { Thread.sleep(ms); } catch (InterruptedException e) {}
+	    }
+
+	    public static void main(String[] args) {
+	        ExecutorService pool = Executors.newFixedThreadPool(16);
+	        List<CompletableFuture<String>> calls = new ArrayList<>();
+	        for (int i = 0; i < 100; i++) {
+	            String orderId = String.valueOf(i);
+	            calls.add(CompletableFuture.supplyAsync(() -> fetchPaymentStatusSafe(orderId), pool));
+	            sleep(20);
+	        }
+	        CompletableFuture.allOf(calls.toArray(new CompletableFuture[0])).join();
+
+	        long fallbacks = calls.stream().filter(f -> f.join().equals("PAYMENT_STATUS_UNKNOWN")).count();
+	        System.out.println("Fallbacks: " + fallbacks + " / " + calls.size());
+	        System.out.println("Bulkhead rejections: " + PAYMENT.bulkhead().rejected.sum());
+	        PAYMENT.breaker().transitionMetrics().forEach((k, v) -> System.out.println(k + " " + v));
+	        pool.shutdown();
+	    }
+	}
+
 
 ==============================================================
 
@@ -1464,6 +1717,444 @@ Cloneable Interface
 					System.out.println(e2);
 				}
 			}
+	
+	Deep Copy without clone() (MethodHandle based copier):-
+		-Hand written clone() is easy to get wrong (see the TODO in Address.clone()) and Object.clone() is a native, reflective-style copy.
+		-Idea: inspect the class ONCE, build a copy plan of MethodHandles (constructor + getter/setter per field), reuse it for every copy.
+		-No reflection on the hot path: only pre-built MethodHandles are invoked (plan is built once per class and cached
+		 in a ClassValue, including the "immutable → share" decision).
+		-Immutable-aware: primitives, String, boxed types, enums, classes marked @Immutable and immutable JDK value types
+		 (BigDecimal, BigInteger, UUID, Locale, Currency, URI, OptionalInt/Long/Double, everything in java.time) are shared, not copied.
+		 Optional is immutable but its content may not be → a new Optional around a copy of the content.
+		-Cycles: an IdentityHashMap (original → copy) is carried through the copy, so A → B → A is copied as A' → B' → A'.
+		-Arrays: Array.newInstance + element copy. JDK collections/maps: their internals (ArrayList.elementData ...) are closed
+		 to reflection on JDK 17 → new instance via the public no-arg constructor + copied elements.
+		 User subclasses (class Tags extends ArrayList<String>) go the same way: own no-arg constructor, the fields the
+		 subclass declares itself, then add()/put() for the elements; the JDK superclass internals are never touched.
+		-Limitations: class needs a no-arg constructor (may be private), final fields are not supported (mark the type @Immutable instead).
+		 JDK collections without a public no-arg constructor (List.of, unmodifiable views), other mutable JDK types and
+		 classes extending a JDK class other than a collection/map are rejected with a message naming the type,
+		 TreeMap/TreeSet come back with natural ordering (a custom Comparator is not carried over).
+		Example:-
+
+			import java.io.*;
+			import java.lang.annotation.*;
+			import java.lang.invoke.*;
+			import java.lang.reflect.*;
+			import java.math.BigDecimal;
+			import java.math.BigInteger;
+			import java.net.URI;
+			import java.util.*;
+
+			@Retention(RetentionPolicy.RUNTIME)
+			@Target(ElementType.TYPE)
+			@interface Immutable {
+			}
+
+			final class DeepCopier {
+
+			    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+			    private static final MethodType GETTER = MethodType.methodType(Object.class, Object.class);
+			    private static final MethodType SETTER = MethodType.methodType(void.class, Object.class, Object.class);
+			    private static final MethodType CTOR = MethodType.methodType(Object.class);
+
+			    // Immutable JDK value types: sharing them is a correct copy (java.time is checked by package)
+			    private static final Set<Class<?>> IMMUTABLE_JDK = Set.of(
+			            String.class, Integer.class, Long.class, Double.class, Boolean.class, Character.class, Byte.class,
+			            Short.class, Float.class, BigDecimal.class, BigInteger.class, UUID.class, Locale.class, Currency.class,
+			            URI.class, OptionalInt.class, OptionalLong.class, OptionalDouble.class);
+
+			    // One plan per class, built on first use; ClassValue lookup is cheaper than a map and needs no reflection
+			    private static final ClassValue<Plan> PLANS = new ClassValue<>() {
+			        @Override
+			        protected Plan computeValue(Class<?> type) {
+			            return buildPlan(type);
+			        }
+			    };
+
+			    private enum Kind { SHARED, BEAN, ARRAY, COLLECTION, MAP, OPTIONAL }
+
+			    private static final class Plan {
+			        final Kind kind;
+			        final MethodHandle constructor;
+			        final MethodHandle[] getters;
+			        final MethodHandle[] setters;
+			        final boolean[] deep;       // false → share the reference (immutable / primitive)
+
+			        Plan(Kind kind, MethodHandle constructor, List<MethodHandle> getters, List<MethodHandle> setters, List<Boolean> deep) {
+			            this.kind = kind;
+			            this.constructor = constructor;
+			            this.getters = getters.toArray(new MethodHandle[0]);
+			            this.setters = setters.toArray(new MethodHandle[0]);
+			            this.deep = new boolean[deep.size()];
+			            for (int i = 0; i < deep.size(); i++) this.deep[i] = deep.get(i);
+			        }
+
+			        Plan(Kind kind, MethodHandle constructor) {
+			            this(kind, constructor, List.of(), List.of(), List.of());
+			        }
+			    }
+
+			    private DeepCopier() {
+			    }
+
+			    public static <T> T copy(T source) {
+			        return copy(source, new IdentityHashMap<>());
+			    }
+
+			    @SuppressWarnings("unchecked")
+			    private static <T> T copy(T source, IdentityHashMap<Object, Object> seen) {
+			        if (source == null) return null;
+			        Plan plan = PLANS.get(source.getClass());
+			        if (plan.kind == Kind.SHARED) return source;
+			        Object done = seen.get(source);
+			        if (done != null) return (T) done;   // cycle or shared reference inside the graph
+
+			        try {
+			            switch (plan.kind) {
+			                case ARRAY:
+			                    return (T) copyArray(source, plan.deep[0], seen);
+			                case OPTIONAL: {
+			                    Optional<?> optional = (Optional<?>) source;
+			                    return (T) (optional.isPresent() ? Optional.of(copy(optional.get(), seen)) : optional);
+			                }
+			                case COLLECTION: {
+			                    Object created = plan.constructor.invokeExact();
+			                    Collection<Object> target = (Collection<Object>) created;
+			                    seen.put(source, target);
+			                    copyFields(plan, source, target, seen);       // subclass fields first, add() may depend on them
+			                    for (Object element : (Collection<?>) source) target.add(copy(element, seen));
+			                    return (T) target;
+			                }
+			                case MAP: {
+			                    Object created = plan.constructor.invokeExact();
+			                    Map<Object, Object> target = (Map<Object, Object>) created;
+			                    seen.put(source, target);
+			                    copyFields(plan, source, target, seen);
+			                    for (Map.Entry<?, ?> e : ((Map<?, ?>) source).entrySet()) {
+			                        target.put(copy(e.getKey(), seen), copy(e.getValue(), seen));
+			                    }
+			                    return (T) target;
+			                }
+			                default: {
+			                    Object target = plan.constructor.invokeExact();
+			                    seen.put(source, target);
+			                    copyFields(plan, source, target, seen);
+			                    return (T) target;
+			                }
+			            }
+			        } catch (RuntimeException e) {
+			            throw e;
+			        } catch (Throwable t) {
+			            throw new IllegalStateException("Cannot copy " + source.getClass().getName(), t);
+			        }
+			    }
+
+			    private static void copyFields(Plan plan, Object source, Object target, IdentityHashMap<Object, Object> seen) throws Throwable {
+			        for (int i = 0; i < plan.getters.length; i++) {
+			            Object value = plan.getters[i].invokeExact(source);
+			            plan.setters[i].invokeExact(target, plan.deep[i] ? copy(value, seen) : value);
+			        }
+			    }
+
+			    // Primitive arrays: plain copy; object arrays: element by element
+			    private static Object copyArray(Object source, boolean deep, IdentityHashMap<Object, Object> seen) {
+			        int length = Array.getLength(source);
+			        Object target = Array.newInstance(source.getClass().getComponentType(), length);
+			        seen.put(source, target);
+			        if (!deep) {
+			            System.arraycopy(source, 0, target, 0, length);
+			        } else {
+			            Object[] from = (Object[]) source, to = (Object[]) target;
+			            for (int i = 0; i < length; i++) to[i] = copy(from[i], seen);
+			        }
+			        return target;
+			    }
+
+			    // Reflection happens only here, once per class
+			    private static Plan buildPlan(Class<?> type) {
+			        if (isImmutable(type)) return new Plan(Kind.SHARED, null);
+			        if (type.isArray()) {
+			            Class<?> component = type.getComponentType();
+			            return new Plan(Kind.ARRAY, null, List.of(), List.of(), List.of(!component.isPrimitive() && !isImmutable(component)));
+			        }
+			        if (type == Optional.class) return new Plan(Kind.OPTIONAL, null);
+			        Kind kind = Collection.class.isAssignableFrom(type) ? Kind.COLLECTION : Map.class.isAssignableFrom(type) ? Kind.MAP : Kind.BEAN;
+			        // JDK collections: their fields are not open to reflection (JDK 17) → rebuild through the public no-arg constructor
+			        if (isJdk(type)) {
+			            if (kind == Kind.BEAN) {
+			                throw new IllegalArgumentException("Unsupported JDK type " + type.getName() + " → mark the owner @Immutable");
+			            }
+			            try {
+			                return new Plan(kind, LOOKUP.findConstructor(type, MethodType.methodType(void.class)).asType(CTOR));
+			            } catch (NoSuchMethodException | IllegalAccessException e) {
+			                throw new IllegalArgumentException("No public no-arg constructor in " + type.getName()
+			                        + " (List.of, unmodifiable views, ...) → use a mutable collection or mark the owner @Immutable", e);
+			            }
+			        }
+			        try {
+			            Constructor<?> ctor = type.getDeclaredConstructor();
+			            ctor.setAccessible(true);
+			            MethodHandle constructor = LOOKUP.unreflectConstructor(ctor).asType(CTOR);
+
+			            List<MethodHandle> getters = new ArrayList<>();
+			            List<MethodHandle> setters = new ArrayList<>();
+			            List<Boolean> deep = new ArrayList<>();
+			            // Own fields only: a JDK superclass is closed to setAccessible (JPMS), collections/maps refill it through add()/put()
+			            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+			                if (isJdk(c)) {
+			                    if (kind != Kind.BEAN) break;
+			                    throw new IllegalArgumentException(type.getName() + " extends JDK class " + c.getName()
+			                            + ", its state can't be copied → mark the type @Immutable");
+			                }
+			                for (Field f : c.getDeclaredFields()) {
+			                    int mod = f.getModifiers();
+			                    if (Modifier.isStatic(mod)) continue;
+			                    if (Modifier.isFinal(mod)) {
+			                        throw new IllegalArgumentException("final field " + f + ", mark the type @Immutable");
+			                    }
+			                    f.setAccessible(true);
+			                    getters.add(LOOKUP.unreflectGetter(f).asType(GETTER));
+			                    setters.add(LOOKUP.unreflectSetter(f).asType(SETTER));
+			                    deep.add(!f.getType().isPrimitive() && !isImmutable(f.getType()));
+			                }
+			            }
+			            return new Plan(kind, constructor, getters, setters, deep);
+			        } catch (NoSuchMethodException | IllegalAccessException e) {
+			            throw new IllegalArgumentException("No copy plan for " + type.getName(), e);
+			        }
+			    }
+
+			    private static boolean isImmutable(Class<?> type) {
+			        return IMMUTABLE_JDK.contains(type) || type.getPackageName().startsWith("java.time")
+			                || Enum.class.isAssignableFrom(type) || type.isAnnotationPresent(Immutable.class);
+			    }
+
+			    private static boolean isJdk(Class<?> type) {
+			        return type.getName().startsWith("java.");
+			    }
+			}
+
+			@Immutable
+			class Country implements Serializable {
+			    final String code;
+			    Country(String code) { this.code = code; }
+			}
+
+			class Address implements Cloneable, Serializable {
+			    String area;
+			    String state;
+			    Country country;          // shared, never copied
+			    Employee resident;        // back-reference → cycle
+
+			    Address() {
+			    }
+
+			    Address(String area, String state, Country country) {
+			        this.area = area;
+			        this.state = state;
+			        this.country = country;
+			    }
+
+			    @Override
+			    public Address clone() {
+			        try {
+			            return (Address) super.clone();
+			        } catch (CloneNotSupportedException e) {
+			            throw new AssertionError();
+			        }
+			    }
+			}
+
+			class Employee implements Cloneable, Serializable {
+			    Integer id;
+			    String name;
+			    Address address;
+
+			    Employee() {
+			    }
+
+			    Employee(Integer id, String name, Address address) {
+			        this.id = id;
+			        this.name = name;
+			        this.address = address;
+			        address.resident = this;
+			    }
+
+			    @Override
+			    public Employee clone() {
+			        try {
+			            Employee employee = (Employee) super.clone();
+			            employee.address = address.clone();
+			            employee.address.resident = employee;
+			            return employee;
+			        } catch (CloneNotSupportedException e) {
+			            throw new AssertionError();
+			        }
+			    }
+			}
+
+			public class DeepCopyBenchmark {
+
+			    static Object serializationCopy(Object o) throws Exception {
+			        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			            out.writeObject(o);
+			        }
+			        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			            return in.readObject();
+			        }
+			    }
+
+			    interface Copy { Object apply(Employee e) throws Exception; }
+
+			    static void measure(String name, Employee e, int iterations, Copy copy) throws Exception {
+			        for (int i = 0; i < iterations; i++) copy.apply(e);   // warm-up (JIT)
+			        long start = System.nanoTime();
+			        Object sink = null;
+			        for (int i = 0; i < iterations; i++) sink = copy.apply(e);
+			        long ns = System.nanoTime() - start;
+			        System.out.printf("%-15s %8.1f ns/copy  (%s)%n", name, (double) ns / iterations, sink != null);
+			    }
+
+			    public static void main(String[] args) throws Exception {
+			        Employee e1 = new Employee(1, "msa63", new Address("abc", "New York", new Country("US")));
+
+			        Employee e2 = DeepCopier.copy(e1);
+			        e2.address.area = "Los Angels";
+			        System.out.println(e1.address.area);                         // abc → original untouched
+			        System.out.println(e2.address.resident == e2);              // true → cycle preserved
+			        System.out.println(e2.address.country == e1.address.country); // true → immutable shared
+
+			        List<Employee> team = new ArrayList<>(List.of(e1, e1));
+			        List<Employee> teamCopy = DeepCopier.copy(team);
+			        System.out.println(teamCopy.get(0) != e1 && teamCopy.get(0) == teamCopy.get(1)); // true → copied once, still shared
+			        int[][] grid = { { 1, 2 }, { 3, 4 } };
+			        System.out.println(DeepCopier.copy(grid)[1] != grid[1]);  // true → nested array copied
+
+			        measure("clone()", e1, 1_000_000, Employee::clone);
+			        measure("MethodHandle", e1, 1_000_000, DeepCopier::copy);
+			        measure("Serialization", e1, 50_000, DeepCopyBenchmark::serializationCopy);
+			    }
+			}
+
+		Sample output (JDK 17):-
+			abc
+			true
+			true
+			true
+			true
+			clone()             22.4 ns/copy  (true)
+			MethodHandle       187.7 ns/copy  (true)
+			Serialization    30544.5 ns/copy  (true)
+		-MethodHandle copier is ~150x faster than serialization and needs no hand written clone(), but it does not beat clone().
+		-MethodHandles kept in an array are not constant-folded by the JIT, the IdentityHashMap (cycle tracking) also costs per copy.
+		-If clone() level speed is needed, generate a plain Java copier per class at build time (annotation processor) and keep the plan above as fallback.
+	
+	Copy-on-Write instead of eager Deep Clone:-
+		-Deep clone copies Address on every clone(), even when the copy is only read and thrown away.
+		-Copy-on-Write (structural sharing): copy() is O(1), the copy shares the same Address object.
+		-Both sides remember that the Address is shared (ownsAddress = false).
+		-First write to a nested component copies only that component, then writes to the private copy.
+		-Same idea as CopyOnWriteArrayList and persistent collections, applied per field.
+		-Good fit when an entity is forked many times and rarely written (workflow engines, what-if calculations).
+		-Not thread-safe per instance (same as the clone() version), share the forks across threads only after they are built.
+		Example:-
+
+			class Address {
+			    private String area;
+			    private String state;
+
+			    Address(String area, String state) {
+			        this.area = area;
+			        this.state = state;
+			    }
+
+			    Address copy() {
+			        CowEmployee.addressCopies++;
+			        return new Address(area, state);
+			    }
+
+			    String getArea() { return area; }
+			    String getState() { return state; }
+			    void setArea(String area) { this.area = area; }
+			    void setState(String state) { this.state = state; }
+
+			    @Override
+			    public String toString() {
+			        return "Address{area='" + area + "', state='" + state + "'}";
+			    }
+			}
+
+			class CowEmployee {
+			    static long addressCopies;   // demo counter
+
+			    private Integer id;
+			    private String name;          // String is immutable → always safe to share
+			    private Address address;
+			    private boolean ownsAddress;  // false → address may be referenced by another fork
+
+			    CowEmployee(Integer id, String name, Address address) {
+			        this.id = id;
+			        this.name = name;
+			        this.address = address;
+			        this.ownsAddress = true;
+			    }
+
+			    // O(1): no nested object is copied here
+			    CowEmployee copy() {
+			        CowEmployee fork = new CowEmployee(id, name, address);
+			        fork.ownsAddress = false;
+			        this.ownsAddress = false;     // original must also copy before its next write
+			        return fork;
+			    }
+
+			    // Copy only the component that is about to change
+			    private Address writableAddress() {
+			        if (!ownsAddress) {
+			            address = address.copy();
+			            ownsAddress = true;
+			        }
+			        return address;
+			    }
+
+			    void setId(Integer id) { this.id = id; }
+			    void setName(String name) { this.name = name; }
+			    void setArea(String area) { writableAddress().setArea(area); }
+			    void setState(String state) { writableAddress().setState(state); }
+
+			    String getArea() { return address.getArea(); }
+
+			    @Override
+			    public String toString() {
+			        return "Employee{id=" + id + ", name='" + name + "', address=" + address + '}';
+			    }
+			}
+
+			public class CowCloneDemo {
+			    public static void main(String[] args) {
+			        CowEmployee e1 = new CowEmployee(1, "msa63", new Address("abc", "New York"));
+			        CowEmployee e2 = e1.copy();          // shares Address
+			        e1.setId(2);
+			        e1.setArea("Los Angels");            // e1 copies Address here, e2 keeps the old one
+
+			        System.out.println(e1);              // area='Los Angels'
+			        System.out.println(e2);              // area='abc'
+
+			        // Fork 1M times, write to 1% of the forks
+			        CowEmployee.addressCopies = 0;
+			        CowEmployee base = new CowEmployee(3, "base", new Address("xyz", "Texas"));
+			        long start = System.nanoTime();
+			        for (int i = 0; i < 1_000_000; i++) {
+			            CowEmployee fork = base.copy();
+			            if (i % 100 == 0) fork.setArea("area-" + i);
+			        }
+			        long ms = (System.nanoTime() - start) / 1_000_000;
+			        System.out.println("1M forks in " + ms + " ms, Address copies: " + CowEmployee.addressCopies); // 10000, not 1M
+			    }
+			}
+
+
 
 ================================================================================================
 
@@ -1539,6 +2230,522 @@ Threading:-
 					System.out.println("Password: " + deserializedUser.password); // null (not saved)
 				}
 			}
+			
+		Compact Binary Codec instead of ObjectOutputStream:-
+			-ObjectOutputStream writes class descriptors (class name, serialVersionUID, field names/types) and uses reflection per object.
+			-Schema based codec: schema is registered once per class, each record carries only field tags + values.
+			-Field values: varint (7 bits per byte) for ints/lengths, zigzag for negative numbers, UTF-8 for strings.
+			 boolean → 0/1 and char → code unit as varint, float/double → 8 raw IEEE bits (fixed64), no truncation.
+			 Any other field type is rejected when the schema is built.
+			-transient fields are skipped while building the schema → never written, default value after decode (same as Java serialization).
+			-Schema evolution: every field has a stable @Tag number + wire type.
+				New field → old readers skip the unknown tag.
+				Removed field → new readers keep the default value.
+				Never reuse a tag number for a different meaning.
+			-Writes straight into a ByteBuffer (heap or direct), no intermediate streams.
+			Example:-
+
+			import java.io.*;
+			import java.lang.annotation.*;
+			import java.lang.invoke.*;
+			import java.lang.reflect.*;
+			import java.nio.BufferOverflowException;
+			import java.nio.ByteBuffer;
+			import java.nio.charset.StandardCharsets;
+			import java.util.*;
+			import java.util.concurrent.ConcurrentHashMap;
+
+			@Retention(RetentionPolicy.RUNTIME)
+			@Target(ElementType.FIELD)
+			@interface Tag {
+			    int value();
+			}
+
+			class User implements Serializable {
+			    @Tag(1) String username;
+			    @Tag(2) transient String password;   // skipped by both codecs
+			    @Tag(3) int loginCount;              // added in v2 of the schema
+
+			    User() {
+			    }
+
+			    User(String username, String password, int loginCount) {
+			        this.username = username;
+			        this.password = password;
+			        this.loginCount = loginCount;
+			    }
+			}
+
+			final class BinaryCodec<T> {
+
+			    private static final int VARINT = 0, FIXED64 = 1, BYTES = 2;
+			    private static final Set<Class<?>> SUPPORTED = Set.of(String.class,
+			            boolean.class, Boolean.class, byte.class, Byte.class, short.class, Short.class, char.class, Character.class,
+			            int.class, Integer.class, long.class, Long.class, float.class, Float.class, double.class, Double.class);
+			    private static final Map<Class<?>, BinaryCodec<?>> REGISTRY = new ConcurrentHashMap<>();
+
+			    private final MethodHandle constructor;
+			    private final int[] tags;
+			    private final Class<?>[] types;
+			    private final MethodHandle[] getters;
+			    private final MethodHandle[] setters;
+			    private final Map<Integer, Integer> indexByTag = new HashMap<>();
+
+			    @SuppressWarnings("unchecked")
+			    static <T> BinaryCodec<T> of(Class<T> type) {
+			        return (BinaryCodec<T>) REGISTRY.computeIfAbsent(type, BinaryCodec::new);
+			    }
+
+			    // Reflection only while building the schema
+			    private BinaryCodec(Class<?> type) {
+			        try {
+			            MethodHandles.Lookup lookup = MethodHandles.lookup();
+			            Constructor<?> ctor = type.getDeclaredConstructor();
+			            ctor.setAccessible(true);
+			            constructor = lookup.unreflectConstructor(ctor).asType(MethodType.methodType(Object.class));
+
+			            List<Field> fields = new ArrayList<>();
+			            for (Field f : type.getDeclaredFields()) {
+			                int mod = f.getModifiers();
+			                if (Modifier.isStatic(mod) || Modifier.isTransient(mod) || !f.isAnnotationPresent(Tag.class)) continue;
+			                if (!SUPPORTED.contains(f.getType())) {                 // fail at schema build, not on the first write
+			                    throw new IllegalArgumentException("Unsupported field type " + f);
+			                }
+			                fields.add(f);
+			            }
+			            fields.sort(Comparator.comparingInt(f -> f.getAnnotation(Tag.class).value()));
+
+			            tags = new int[fields.size()];
+			            types = new Class<?>[fields.size()];
+			            getters = new MethodHandle[fields.size()];
+			            setters = new MethodHandle[fields.size()];
+			            for (int i = 0; i < fields.size(); i++) {
+			                Field f = fields.get(i);
+			                f.setAccessible(true);
+			                tags[i] = f.getAnnotation(Tag.class).value();
+			                types[i] = f.getType();
+			                getters[i] = lookup.unreflectGetter(f).asType(MethodType.methodType(Object.class, Object.class));
+			                setters[i] = lookup.unreflectSetter(f).asType(MethodType.methodType(void.class, Object.class, Object.class));
+			                indexByTag.put(tags[i], i);
+			            }
+			        } catch (ReflectiveOperationException e) {
+			            throw new IllegalArgumentException("Cannot build schema for " + type.getName(), e);
+			        }
+			    }
+
+			    // Record layout: [varint bodyLength] { [varint tag<<3|wireType] [value] }*
+			    // Not enough space → always BufferOverflowException (position() past the limit would throw IllegalArgumentException)
+			    void write(T value, ByteBuffer buf) {
+			        int lengthPos = buf.position();
+			        if (buf.remaining() < 2) throw new BufferOverflowException();
+			        buf.position(lengthPos + 2);                 // reserve 2 bytes for the length, patched below
+			        try {
+			            for (int i = 0; i < tags.length; i++) {
+			                Object v = getters[i].invokeExact((Object) value);
+			                if (v == null) continue;             // absent field = default on read
+			                if (types[i] == String.class) {
+			                    byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+			                    writeVarint(buf, tags[i] << 3 | BYTES);
+			                    writeVarint(buf, bytes.length);
+			                    buf.put(bytes);
+			                } else if (v instanceof Double || v instanceof Float) {
+			                    writeVarint(buf, tags[i] << 3 | FIXED64);        // exact bits, no truncation
+			                    buf.putLong(Double.doubleToRawLongBits(((Number) v).doubleValue()));
+			                } else {
+			                    writeVarint(buf, tags[i] << 3 | VARINT);
+			                    writeVarLong(buf, zigzag(toLong(v)));
+			                }
+			            }
+			        } catch (RuntimeException e) {
+			            throw e;                                 // e.g. BufferOverflowException → caller rolls to a new buffer
+			        } catch (Throwable t) {
+			            throw new IllegalStateException(t);
+			        }
+			        int bodyLength = buf.position() - lengthPos - 2;
+			        if (bodyLength < (1 << 14)) {
+			            writePaddedVarint(buf, lengthPos, bodyLength, 2);
+			            return;
+			        }
+			        // Rare large record: move the body 3 bytes right to fit a 5 byte length
+			        if (buf.remaining() < 3) throw new BufferOverflowException();
+			        ByteBuffer body = buf.duplicate();
+			        body.position(lengthPos + 2).limit(lengthPos + 2 + bodyLength);
+			        ByteBuffer copy = ByteBuffer.allocate(bodyLength).put(body);
+			        copy.flip();
+			        buf.position(lengthPos + 5);
+			        buf.put(copy);
+			        writePaddedVarint(buf, lengthPos, bodyLength, 5);
+			    }
+
+			    @SuppressWarnings("unchecked")
+			    T read(ByteBuffer buf) {
+			        int length = readVarint(buf);
+			        int end = buf.position() + length;
+			        try {
+			            Object target = constructor.invokeExact();
+			            while (buf.position() < end) {
+			                int key = readVarint(buf);
+			                int wireType = key & 7;
+			                Integer index = indexByTag.get(key >>> 3);
+			                if (wireType == BYTES) {
+			                    int len = readVarint(buf);
+			                    if (index != null) {
+			                        setters[index].invokeExact(target, (Object) readString(buf, len));
+			                    } else {
+			                        buf.position(buf.position() + len);   // unknown tag → skip
+			                    }
+			                } else if (wireType == FIXED64) {
+			                    double d = Double.longBitsToDouble(buf.getLong());
+			                    if (index != null) setters[index].invokeExact(target, boxDouble(types[index], d));
+			                } else {
+			                    long raw = unzigzag(readVarLong(buf));
+			                    if (index != null) setters[index].invokeExact(target, box(types[index], raw));
+			                }
+			            }
+			            return (T) target;
+			        } catch (Throwable t) {
+			            throw new IllegalStateException(t);
+			        }
+			    }
+
+			    private static String readString(ByteBuffer buf, int len) {
+			        String s;
+			        if (buf.hasArray()) {
+			            s = new String(buf.array(), buf.arrayOffset() + buf.position(), len, StandardCharsets.UTF_8);
+			            buf.position(buf.position() + len);
+			        } else {                                  // direct / mapped buffer
+			            byte[] bytes = new byte[len];
+			            buf.get(bytes);
+			            s = new String(bytes, StandardCharsets.UTF_8);
+			        }
+			        return s;
+			    }
+
+			    private static long toLong(Object v) {
+			        if (v instanceof Boolean) return (Boolean) v ? 1 : 0;
+			        if (v instanceof Character) return (Character) v;
+			        return ((Number) v).longValue();
+			    }
+
+			    private static Object box(Class<?> type, long raw) {
+			        if (type == int.class || type == Integer.class) return (int) raw;
+			        if (type == boolean.class || type == Boolean.class) return raw != 0;
+			        if (type == short.class || type == Short.class) return (short) raw;
+			        if (type == byte.class || type == Byte.class) return (byte) raw;
+			        if (type == char.class || type == Character.class) return (char) raw;
+			        return raw;
+			    }
+
+			    private static Object boxDouble(Class<?> type, double d) {
+			        return type == float.class || type == Float.class ? (Object) (float) d : (Object) d;
+			    }
+
+			    static long zigzag(long v) { return (v << 1) ^ (v >> 63); }
+			    static long unzigzag(long v) { return (v >>> 1) ^ -(v & 1); }
+
+			    static void writeVarint(ByteBuffer buf, int v) { writeVarLong(buf, v & 0xFFFFFFFFL); }
+
+			    static void writeVarLong(ByteBuffer buf, long v) {
+			        while ((v & ~0x7FL) != 0) {
+			            buf.put((byte) ((v & 0x7F) | 0x80));
+			            v >>>= 7;
+			        }
+			        buf.put((byte) v);
+			    }
+
+			    // Length is patched after the body is written, so it fills exactly the reserved bytes
+			    static void writePaddedVarint(ByteBuffer buf, int pos, int v, int width) {
+			        for (int i = 0; i < width - 1; i++) {
+			            buf.put(pos + i, (byte) ((v & 0x7F) | 0x80));
+			            v >>>= 7;
+			        }
+			        buf.put(pos + width - 1, (byte) v);
+			    }
+
+			    static int readVarint(ByteBuffer buf) { return (int) readVarLong(buf); }
+
+			    static long readVarLong(ByteBuffer buf) {
+			        long result = 0;
+			        for (int shift = 0; ; shift += 7) {
+			            byte b = buf.get();
+			            result |= (long) (b & 0x7F) << shift;
+			            if (b >= 0) return result;
+			        }
+			    }
+			}
+
+			public class BinaryCodecBenchmark {
+			    public static void main(String[] args) throws Exception {
+			        int n = 1_000_000;
+			        List<User> users = new ArrayList<>(n);
+			        for (int i = 0; i < n; i++) users.add(new User("user" + i, "secret" + i, i % 1000));
+			        users.set(n - 1, new User(new String(new char[20_000]).replace('\0', 'x'), "big", 1)); // > 16KB record
+
+			        // Binary codec
+			        BinaryCodec<User> codec = BinaryCodec.of(User.class);
+			        ByteBuffer buf = ByteBuffer.allocate(64 * 1024 * 1024);
+			        long start = System.nanoTime();
+			        for (User u : users) codec.write(u, buf);
+			        long writeNs = System.nanoTime() - start;
+			        int binarySize = buf.position();
+			        buf.flip();
+			        start = System.nanoTime();
+			        User first = codec.read(buf);
+			        for (int i = 1; i < n; i++) codec.read(buf);
+			        long readNs = System.nanoTime() - start;
+			        System.out.println(first.username + " / " + first.password);   // user0 / null (transient)
+
+			        // Java serialization (one stream → class descriptor written once, best case for it)
+			        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			        start = System.nanoTime();
+			        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			            for (User u : users) out.writeObject(u);
+			        }
+			        long javaWriteNs = System.nanoTime() - start;
+			        start = System.nanoTime();
+			        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			            for (int i = 0; i < n; i++) in.readObject();
+			        }
+			        long javaReadNs = System.nanoTime() - start;
+
+			        System.out.printf("Binary codec : %,d bytes, write %,d ops/s, read %,d ops/s%n",
+			                binarySize, n * 1_000_000_000L / writeNs, n * 1_000_000_000L / readNs);
+			        System.out.printf("Java serial. : %,d bytes, write %,d ops/s, read %,d ops/s%n",
+			                bytes.size(), n * 1_000_000_000L / javaWriteNs, n * 1_000_000_000L / javaReadNs);
+			    }
+			}
+
+			Sample output (JDK 17, 1M users):-
+				Binary codec : 16,844,884 bytes, write 2,487,192 ops/s, read 3,942,773 ops/s
+				Java serial. : 22,908,944 bytes, write 387,328 ops/s, read 581,385 ops/s
+			-Java serialization numbers are its best case (one stream, class descriptor written once). Per-object streams are far bigger.
+		Memory-Mapped Append-Only User Store (instead of one user.ser per object):-
+			-Users are appended to segment files (segment-00001.log, ...) through a MappedByteBuffer, no write() system call per user.
+			-Record layout: [varint keyLength+1][int CRC32][username UTF-8][BinaryCodec record]. Codec record carries its own length → can be skipped.
+			 CRC32 covers username + record and is filled in after both are written.
+			-In-memory index: username → (segmentId, offset). Latest append wins, older versions become garbage.
+			-Reads decode straight from the mapped buffer (duplicate() + position), no FileInputStream, no ObjectInputStream.
+			-Restart: re-map the segment files and rebuild the index by scanning keys and skipping bodies (no User is decoded).
+			 Each record's CRC is checked on the way. A crash can leave a torn record (length written, payload not, or only
+			 some pages flushed) → the first record with a bad CRC or an impossible length ends the segment, appends continue there.
+			-Compaction: a sealed segment with few live records is rewritten into the active segment and deleted.
+			-Notes:
+				Mapped files are pre-sized, a 0 byte where the next keyLength+1 would be marks the end of data in a segment
+				 (+1 keeps an empty username valid). Every put writes that one byte after its record → O(1), old bytes behind
+				 the marker (a dropped partial record, a torn tail cut off by recovery) are never read. A record larger than a whole segment is rejected.
+				force() flushes dirty pages to disk, call it on seal/close (or per write if every user must survive a crash).
+				The JVM unmaps a MappedByteBuffer only when it is garbage collected. On Windows a mapped file can't be deleted before that.
+				Compaction forces the active segment (holding the copies) before deleting the old file.
+				Single writer: append/compact are synchronized, get() can run in parallel with them
+				 (a segment removed under get() → re-read the index, it already points at the copy).
+			Example:-
+
+			import java.io.*;
+			import java.nio.ByteBuffer;
+			import java.nio.MappedByteBuffer;
+			import java.nio.channels.FileChannel;
+			import java.nio.charset.StandardCharsets;
+			import java.nio.file.*;
+			import java.util.*;
+			import java.util.concurrent.ConcurrentHashMap;
+			import java.util.stream.Stream;
+			import java.util.zip.CRC32;
+
+			class MappedUserStore implements Closeable {
+
+			    private static final class Segment {
+			        final int id;
+			        final Path path;
+			        final MappedByteBuffer buffer;
+			        int liveRecords;
+			        int totalRecords;
+
+			        Segment(int id, Path path, MappedByteBuffer buffer) {
+			            this.id = id;
+			            this.path = path;
+			            this.buffer = buffer;
+			        }
+			    }
+
+			    private final Path dir;
+			    private final int segmentSize;
+			    private final BinaryCodec<User> codec = BinaryCodec.of(User.class);
+			    private final Map<Integer, Segment> segments = new ConcurrentHashMap<>();
+			    private final Map<String, Long> index = new ConcurrentHashMap<>();   // segmentId << 32 | offset
+			    private Segment active;
+
+			    MappedUserStore(Path dir, int segmentSize) throws IOException {
+			        this.dir = Files.createDirectories(dir);
+			        this.segmentSize = segmentSize;
+			        List<Path> files;
+			        try (Stream<Path> list = Files.list(dir)) {
+			            files = list.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().collect(java.util.stream.Collectors.toList());
+			        }
+			        for (Path file : files) {
+			            recover(map(segmentId(file), file));      // re-map, no deserialization
+			        }
+			        if (active == null) roll();
+			    }
+
+			    synchronized void put(User user) throws IOException {
+			        byte[] key = user.username.getBytes(StandardCharsets.UTF_8);
+			        ByteBuffer buf = active.buffer;
+			        int offset = buf.position();
+			        try {
+			            BinaryCodec.writeVarint(buf, key.length + 1);   // +1 → an empty username is not the end marker
+			            int crcAt = buf.position();
+			            buf.putInt(0);
+			            buf.put(key);
+			            codec.write(user, buf);
+			            buf.putInt(crcAt, crc(buf, crcAt + 4, buf.position()));
+			            if (buf.hasRemaining()) buf.put(buf.position(), (byte) 0);   // end marker for the next slot
+			        } catch (java.nio.BufferOverflowException e) {
+			            markEnd(buf, offset);                     // drop the partial record, keep the end marker valid
+			            if (offset == 0) {                        // does not fit an empty segment → rolling would never end
+			                throw new IllegalArgumentException("User " + user.username + " is larger than a " + segmentSize + " byte segment");
+			            }
+			            roll();
+			            put(user);
+			            return;
+			        }
+			        Long previous = index.put(user.username, address(active.id, offset));
+			        if (previous != null) segments.get(segmentOf(previous)).liveRecords--;
+			        active.liveRecords++;
+			        active.totalRecords++;
+			    }
+
+			    User get(String username) {
+			        while (true) {
+			            Long address = index.get(username);
+			            if (address == null) return null;
+			            Segment s = segments.get(segmentOf(address));
+			            if (s == null) continue;      // compacted meanwhile → index already points at the copy, read it again
+			            ByteBuffer view = s.buffer.duplicate();                                 // shares the mapped memory
+			            view.position(offsetOf(address));
+			            int keyLength = BinaryCodec.readVarint(view) - 1;
+			            view.position(view.position() + 4 + keyLength);                         // skip CRC + key
+			            return codec.read(view);
+			        }
+			    }
+
+			    // Rewrite live records of mostly-dead sealed segments, then drop the files
+			    synchronized int compact(double maxLiveRatio) throws IOException {
+			        int removed = 0;
+			        for (Segment s : new ArrayList<>(segments.values())) {
+			            if (s == active || s.totalRecords == 0 || (double) s.liveRecords / s.totalRecords > maxLiveRatio) continue;
+			            for (Map.Entry<String, Long> e : index.entrySet()) {
+			                if (segmentOf(e.getValue()) == s.id) put(get(e.getKey()));
+			            }
+			            active.buffer.force();                    // copies must be on disk before the only other copy is deleted
+			            segments.remove(s.id);
+			            Files.delete(s.path);
+			            removed++;
+			        }
+			        return removed;
+			    }
+
+			    @Override
+			    public synchronized void close() {
+			        for (Segment s : segments.values()) s.buffer.force();
+			    }
+
+			    private void recover(Segment s) {
+			        ByteBuffer buf = s.buffer;
+			        while (buf.remaining() > 0) {
+			            int offset = buf.position();
+			            byte[] key = readValidKey(buf);
+			            if (key == null) {                        // 0 byte = end of written data, or a torn record
+			                markEnd(buf, offset);
+			                break;
+			            }
+			            Long previous = index.put(new String(key, StandardCharsets.UTF_8), address(s.id, offset));
+			            if (previous != null) segments.get(segmentOf(previous)).liveRecords--;
+			            s.liveRecords++;
+			            s.totalRecords++;
+			        }
+			        active = s;                                   // last segment keeps taking appends
+			    }
+
+			    private void roll() throws IOException {
+			        if (active != null) active.buffer.force();
+			        int id = active == null ? 1 : active.id + 1;
+			        active = map(id, dir.resolve(String.format("segment-%05d.log", id)));
+			    }
+
+			    private Segment map(int id, Path path) throws IOException {
+			        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.CREATE,
+			                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			            // Mapping stays valid after the channel is closed
+			            Segment s = new Segment(id, path, ch.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize));
+			            segments.put(id, s);
+			            return s;
+			        }
+			    }
+
+			    // Reads one record header + key and skips the body (no decode); null at the end marker or if the record is
+			    // torn: impossible length or CRC mismatch. Leaves the position after the record.
+			    private static byte[] readValidKey(ByteBuffer buf) {
+			        try {
+			            int keyLength = BinaryCodec.readVarint(buf) - 1;
+			            if (keyLength < 0 || keyLength > buf.remaining() - 4) return null;
+			            int expected = buf.getInt();
+			            int keyAt = buf.position();
+			            byte[] key = new byte[keyLength];
+			            buf.get(key);
+			            int bodyLength = BinaryCodec.readVarint(buf);
+			            if (bodyLength < 0 || bodyLength > buf.remaining()) return null;
+			            buf.position(buf.position() + bodyLength);                    // skip body, no decode
+			            return crc(buf, keyAt, buf.position()) == expected ? key : null;
+			        } catch (java.nio.BufferUnderflowException | IllegalArgumentException e) {   // garbage varint
+			            return null;
+			        }
+			    }
+
+			    private static int crc(ByteBuffer buf, int from, int to) {
+			        CRC32 crc = new CRC32();
+			        crc.update(buf.duplicate().position(from).limit(to));
+			        return (int) crc.getValue();
+			    }
+
+			    // O(1): only the next slot's header byte is zeroed, whatever lies behind it is never read
+			    private static void markEnd(ByteBuffer buf, int offset) {
+			        if (offset < buf.capacity()) buf.put(offset, (byte) 0);
+			        buf.position(offset);
+			    }
+
+			    private static int segmentId(Path file) {
+			        String name = file.getFileName().toString();
+			        return Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+			    }
+
+			    private static long address(int segmentId, int offset) { return (long) segmentId << 32 | offset; }
+			    private static int segmentOf(long address) { return (int) (address >>> 32); }
+			    private static int offsetOf(long address) { return (int) address; }
+			}
+
+			public class MappedUserStoreDemo {
+			    public static void main(String[] args) throws Exception {
+			        Path dir = Files.createTempDirectory("user-store");
+			        int n = 1_000_000;
+
+			        long start = System.nanoTime();
+			        try (MappedUserStore store = new MappedUserStore(dir, 16 * 1024 * 1024)) {
+			            for (int i = 0; i < n; i++) store.put(new User("user" + i, "secret", i % 1000));
+			            for (int i = 0; i < n / 2; i++) store.put(new User("user" + i, "secret", 42));   // overwrite half
+			            System.out.println("Write: " + (System.nanoTime() - start) / 1_000_000 + " ms");
+			            System.out.println("Compacted segments: " + store.compact(0.5));
+			        }
+
+			        start = System.nanoTime();
+			        try (MappedUserStore reopened = new MappedUserStore(dir, 16 * 1024 * 1024)) {
+			            System.out.println("Reopen (re-map + index scan): " + (System.nanoTime() - start) / 1_000_000 + " ms");
+			            User u = reopened.get("user7");
+			            System.out.println(u.username + " " + u.loginCount + " " + u.password);   // user7 42 null
+			        }
+			    }
+			}
+
+
 
 | Feature     | `volatile` 🔄                                   | `transient` 🚫                                |
 | ----------- | ----------------------------------------------- | --------------------------------------------- |
@@ -1648,6 +2855,472 @@ Atomic Operations VS Non Atomic Operations:-
 | Performance                 | Faster (simple read/write)                              | Slightly slower (CAS operations)       |
 | Use Case                    | Flags, state changes (e.g., `volatile boolean running`) | Counters, accumulators, atomic updates |
 
+Striped Counter (LongAdder style) instead of one AtomicInteger:-
+	-AtomicInteger.incrementAndGet() is a CAS retry loop on ONE memory location.
+	-With many cores every increment fights for the same cache line → CAS failures, retries, cache line ping-pong between cores.
+	-Striped counter: spread the updates over several cells, each thread hashes to its own cell.
+		Uncontended → update the base field only (as cheap as AtomicLong).
+		CAS on base fails → switch to cells, thread picks a cell by its per-thread hash (probe).
+		CAS on a cell fails → change the thread's probe; if it keeps failing, double the cells (up to number of CPUs).
+	-Cells are padded to 128 bytes so two cells never share a cache line (false sharing).
+	-sum() = base + all cells (not an atomic snapshot while updates are running, fine for statistics).
+	-sumThenReset() = read and zero every cell, useful for "requests per interval" metrics.
+	-java.util.concurrent.atomic.LongAdder (Java 8) is the JDK version of the same idea, use it unless you need custom behavior.
+	Example:-
+
+	import java.util.concurrent.ThreadLocalRandom;
+	import java.util.concurrent.atomic.AtomicInteger;
+	import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+	class StripedCounter {
+
+	    // Padding fields keep value on its own 128 byte region (two 64 byte lines, adjacent-line prefetch)
+	    @SuppressWarnings("unused")
+	    static final class Cell {
+	        long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+	        volatile long value;
+	        long q01, q02, q03, q04, q05, q06, q07, q08, q09, q10, q11, q12, q13, q14, q15;
+
+	        static final AtomicLongFieldUpdater<Cell> VALUE =
+	                AtomicLongFieldUpdater.newUpdater(Cell.class, "value");
+
+	        Cell(long x) { value = x; }
+
+	        boolean cas(long expect, long update) { return VALUE.compareAndSet(this, expect, update); }
+	    }
+
+	    private static final int MAX_CELLS = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1);
+	    private static final AtomicLongFieldUpdater<StripedCounter> BASE =
+	            AtomicLongFieldUpdater.newUpdater(StripedCounter.class, "base");
+
+	    // Per-thread hash, changed when the thread collides with another one
+	    private static final ThreadLocal<int[]> PROBE =
+	            ThreadLocal.withInitial(() -> new int[] { ThreadLocalRandom.current().nextInt() | 1 });
+
+	    private volatile long base;
+	    private volatile Cell[] cells;
+	    private final AtomicInteger resizing = new AtomicInteger();   // spin lock for creating/expanding cells
+
+	    public void increment() {
+	        add(1);
+	    }
+
+	    public void add(long x) {
+	        Cell[] cs = cells;
+	        long b = base;
+	        if (cs == null && BASE.compareAndSet(this, b, b + x)) {
+	            return;                                   // fast path: no contention seen yet
+	        }
+	        int[] probe = PROBE.get();
+	        boolean collided = false;
+	        for (;;) {
+	            cs = cells;
+	            if (cs == null) {
+	                if (resizing.compareAndSet(0, 1)) {
+	                    try {
+	                        if (cells == null) cells = new Cell[] { new Cell(0), new Cell(0) };
+	                    } finally {
+	                        resizing.set(0);
+	                    }
+	                    continue;
+	                }
+	                b = base;
+	                if (BASE.compareAndSet(this, b, b + x)) return;   // someone else is creating cells
+	                continue;
+	            }
+	            Cell c = cs[probe[0] & (cs.length - 1)];
+	            long v = c.value;
+	            if (c.cas(v, v + x)) return;
+
+	            // Contention on this cell: first move to another cell, then expand
+	            if (collided && cs.length < MAX_CELLS && cells == cs && resizing.compareAndSet(0, 1)) {
+	                try {
+	                    if (cells == cs) {
+	                        Cell[] bigger = new Cell[cs.length << 1];
+	                        System.arraycopy(cs, 0, bigger, 0, cs.length);
+	                        for (int i = cs.length; i < bigger.length; i++) bigger[i] = new Cell(0);
+	                        cells = bigger;
+	                    }
+	                } finally {
+	                    resizing.set(0);
+	                }
+	                collided = false;
+	                continue;
+	            }
+	            collided = true;
+	            probe[0] = rehash(probe[0]);
+	        }
+	    }
+
+	    public long sum() {
+	        long sum = base;
+	        Cell[] cs = cells;
+	        if (cs != null) {
+	            for (Cell c : cs) sum += c.value;
+	        }
+	        return sum;
+	    }
+
+	    // Each cell is swapped to zero on its own, so no increment is lost or counted twice
+	    public long sumThenReset() {
+	        long sum = BASE.getAndSet(this, 0);
+	        Cell[] cs = cells;
+	        if (cs != null) {
+	            for (Cell c : cs) sum += Cell.VALUE.getAndSet(c, 0);
+	        }
+	        return sum;
+	    }
+
+	    private static int rehash(int h) {            // xorshift
+	        h ^= h << 13;
+	        h ^= h >>> 17;
+	        h ^= h << 5;
+	        return h;
+	    }
+	}
+
+	public class TestStriped {
+	    public static void main(String[] args) throws InterruptedException {
+	        StripedCounter counter = new StripedCounter();
+	        Runnable task = () -> {
+	            for (int i = 0; i < 1_000_000; i++) counter.increment();
+	        };
+	        Thread[] threads = new Thread[8];
+	        for (int i = 0; i < threads.length; i++) (threads[i] = new Thread(task)).start();
+	        for (Thread t : threads) t.join();
+	        System.out.println("Final count = " + counter.sum());   // 8000000
+	    }
+	}
+
+	import java.util.concurrent.TimeUnit;
+	import org.openjdk.jmh.annotations.*;
+
+	// Run once per thread count:
+	//   for t in 1 2 4 8 16 32 64; do java -jar benchmarks.jar CounterContentionBenchmark -t $t -f 1 -wi 3 -i 5; done
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	@State(Scope.Benchmark)                      // one shared counter for all benchmark threads → real contention
+	public class CounterContentionBenchmark {
+
+	    CounterVolatile volatileCounter = new CounterVolatile();
+	    CounterAtomic atomicCounter = new CounterAtomic();
+	    StripedCounter stripedCounter = new StripedCounter();
+
+	    @Benchmark
+	    public void volatileInt() {
+	        volatileCounter.increment();         // loses updates, only a lower bound on cost
+	    }
+
+	    @Benchmark
+	    public void atomicInteger() {
+	        atomicCounter.increment();
+	    }
+
+	    @Benchmark
+	    public void striped() {
+	        stripedCounter.increment();
+	    }
+	}
+
+	-Expected shape of the results: at 1 thread all three are close; from a few threads on AtomicInteger throughput drops
+	 (every CAS failure is a retry), while the striped counter keeps scaling until cells = CPUs.
+	-Reading is the price: sum() walks all cells, so use it for counters that are written often and read rarely.
+
+Lock-free Metrics Registry (Counters, Gauges, Timers):-
+	-Counting is not enough in production: we also need current values (gauges) and latency distributions (timers).
+	-Hot path rule: the update must not take a lock and must not allocate.
+		Counter → StripedCounter (above), one cell per contending thread.
+		Gauge   → no update at all, a DoubleSupplier is read only when a snapshot is taken.
+		 One gauge per id: registering the same id twice is an error (the second would silently replace the first).
+		 gauge(name, obj, fn) holds obj weakly → the registry does not keep e.g. every Bank alive; once obj is
+		 collected the gauge disappears from the output and its id can be registered again.
+		Timer   → HDR-style histogram: log-linear buckets in an AtomicLongArray, record = 1 bucket index + 1 atomic add.
+	-HDR-style buckets: every power of 2 is split into 32 linear sub-buckets → any value is stored with max ~3% error,
+	 memory is fixed (~1200 buckets), no matter how many values are recorded.
+	-Tags (op=deposit, leg=payment): name + sorted tags form the metric id, registered once via computeIfAbsent.
+	 Tag values are escaped as the exposition format requires (\ → \\, " → \", newline → \n), so a pool or tenant
+	 name containing a quote can't break the file.
+	 Keep the returned Counter/Timer in a field, don't look it up on every call.
+	-Export: snapshot all metrics into Prometheus text exposition format and write it to a file every N seconds
+	 (write to temp file + atomic move, so a scraper/node_exporter textfile collector never reads half a file).
+	Example:-
+
+	import java.io.IOException;
+	import java.nio.charset.StandardCharsets;
+	import java.nio.file.*;
+	import java.util.*;
+	import java.util.concurrent.*;
+	import java.util.concurrent.atomic.AtomicLongArray;
+	import java.lang.ref.WeakReference;
+	import java.util.function.DoubleSupplier;
+	import java.util.function.ToDoubleFunction;
+
+	final class Histogram {
+	    private static final int SUB_BITS = 5;                  // 32 sub-buckets per power of 2
+	    private static final int SUB = 1 << SUB_BITS;
+	    private static final int MAX_SHIFT = 35;                // values up to ~2^40 ns (~18 minutes)
+
+	    private final AtomicLongArray counts = new AtomicLongArray((MAX_SHIFT + 2) * SUB);
+	    private final StripedCounter total = new StripedCounter();
+	    private final StripedCounter sum = new StripedCounter();
+
+	    void record(long value) {
+	        if (value < 0) value = 0;
+	        counts.incrementAndGet(indexOf(value));
+	        total.increment();
+	        sum.add(value);
+	    }
+
+	    static int indexOf(long v) {
+	        if (v < SUB) return (int) v;
+	        int shift = Math.min(63 - Long.numberOfLeadingZeros(v) - SUB_BITS, MAX_SHIFT);
+	        long top = Math.min(v >>> shift, 2 * SUB - 1);
+	        return (shift + 1) * SUB + (int) (top - SUB);
+	    }
+
+	    static long lowerBound(int index) {
+	        if (index < SUB) return index;
+	        int shift = index / SUB - 1;
+	        return (long) (index % SUB + SUB) << shift;
+	    }
+
+	    long count() { return total.sum(); }
+	    long sum() { return sum.sum(); }
+
+	    // Walks the buckets once, counts are read without stopping writers
+	    long[] percentiles(double... ps) {
+	        long[] snapshot = new long[counts.length()];
+	        long n = 0;
+	        for (int i = 0; i < snapshot.length; i++) n += snapshot[i] = counts.get(i);
+	        long[] result = new long[ps.length];
+	        for (int p = 0; p < ps.length; p++) {
+	            long rank = (long) Math.ceil(ps[p] * n), seen = 0;
+	            for (int i = 0; i < snapshot.length && n > 0; i++) {
+	                seen += snapshot[i];
+	                if (seen >= rank) { result[p] = lowerBound(i); break; }
+	            }
+	        }
+	        return result;
+	    }
+	}
+
+	final class Timer {
+	    final Histogram histogram = new Histogram();
+
+	    long start() { return System.nanoTime(); }
+
+	    void stop(long startNanos) { histogram.record(System.nanoTime() - startNanos); }
+
+	    <T> T record(Callable<T> body) throws Exception {
+	        long start = start();
+	        try {
+	            return body.call();
+	        } finally {
+	            stop(start);
+	        }
+	    }
+	}
+
+	final class MetricsRegistry {
+
+	    static final MetricsRegistry GLOBAL = new MetricsRegistry();
+
+	    private final Map<String, Object> metrics = new ConcurrentHashMap<>();   // id → StripedCounter / DoubleSupplier / Timer
+
+	    StripedCounter counter(String name, String... tags) {
+	        return (StripedCounter) metrics.computeIfAbsent(id(name, tags), k -> new StripedCounter());
+	    }
+
+	    void gauge(String name, DoubleSupplier value, String... tags) {
+	        String id = id(name, tags);
+	        metrics.compute(id, (k, old) -> {
+	            if (old == null || old instanceof WeakGauge && ((WeakGauge<?>) old).isCleared()) return value;
+	            throw new IllegalArgumentException("gauge " + id + " is already registered");
+	        });
+	    }
+
+	    // Gauge on an object's state without keeping the object alive
+	    <T> void gauge(String name, T obj, ToDoubleFunction<T> value, String... tags) {
+	        gauge(name, new WeakGauge<>(obj, value), tags);
+	    }
+
+	    Timer timer(String name, String... tags) {
+	        return (Timer) metrics.computeIfAbsent(id(name, tags), k -> new Timer());
+	    }
+
+	    // name{k1="v1",k2="v2"} with tags sorted, so the same tags in another order map to the same metric
+	    private static String id(String name, String... tags) {
+	        if (tags.length % 2 != 0) throw new IllegalArgumentException("tags must be key/value pairs");
+	        TreeMap<String, String> sorted = new TreeMap<>();
+	        for (int i = 0; i < tags.length; i += 2) sorted.put(tags[i], tags[i + 1]);
+	        StringJoiner labels = new StringJoiner(",", "{", "}").setEmptyValue("");
+	        sorted.forEach((k, v) -> labels.add(k + "=\"" + escape(v) + "\""));
+	        return name + labels;
+	    }
+
+	    // Label value escaping of the text exposition format
+	    private static String escape(String value) {
+	        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	    }
+
+	    // Prometheus text exposition format
+	    String scrape() {
+	        StringBuilder out = new StringBuilder();
+	        Set<String> typed = new HashSet<>();
+	        for (Map.Entry<String, Object> e : new TreeMap<>(metrics).entrySet()) {
+	            String id = e.getKey();
+	            int brace = id.indexOf('{');
+	            String name = brace < 0 ? id : id.substring(0, brace);
+	            String labels = brace < 0 ? "" : id.substring(brace + 1, id.length() - 1);
+	            Object m = e.getValue();
+	            if (m instanceof StripedCounter) {
+	                if (typed.add(name)) out.append("# TYPE ").append(name).append(" counter\n");
+	                out.append(id).append(' ').append(((StripedCounter) m).sum()).append('\n');
+	            } else if (m instanceof DoubleSupplier) {
+	                if (m instanceof WeakGauge && ((WeakGauge<?>) m).isCleared()) {
+	                    metrics.remove(id, m);                       // object collected → gauge gone
+	                    continue;
+	                }
+	                if (typed.add(name)) out.append("# TYPE ").append(name).append(" gauge\n");
+	                out.append(id).append(' ').append(((DoubleSupplier) m).getAsDouble()).append('\n');
+	            } else {
+	                Histogram h = ((Timer) m).histogram;
+	                if (typed.add(name)) out.append("# TYPE ").append(name).append(" summary\n");
+	                double[] qs = { 0.5, 0.9, 0.99, 0.999 };
+	                long[] values = h.percentiles(qs);
+	                String sep = labels.isEmpty() ? "" : ",";
+	                for (int i = 0; i < qs.length; i++) {
+	                    out.append(name).append('{').append(labels).append(sep).append("quantile=\"").append(qs[i])
+	                       .append("\"} ").append(values[i] / 1e9).append('\n');
+	                }
+	                String suffix = labels.isEmpty() ? "" : "{" + labels + "}";
+	                out.append(name).append("_sum").append(suffix).append(' ').append(h.sum() / 1e9).append('\n');
+	                out.append(name).append("_count").append(suffix).append(' ').append(h.count()).append('\n');
+	            }
+	        }
+	        return out.toString();
+	    }
+
+	    ScheduledExecutorService exportTo(Path file, long periodSeconds) {
+	        ScheduledExecutorService exporter = Executors.newSingleThreadScheduledExecutor(r -> {
+	            Thread t = new Thread(r, "metrics-exporter");
+	            t.setDaemon(true);
+	            return t;
+	        });
+	        exporter.scheduleAtFixedRate(() -> {
+	            try {
+	                Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+	                Files.write(tmp, scrape().getBytes(StandardCharsets.UTF_8));
+	                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	            } catch (IOException e) {
+	                e.printStackTrace();
+	            }
+	        }, periodSeconds, periodSeconds, TimeUnit.SECONDS);
+	        return exporter;
+	    }
+
+	    private static final class WeakGauge<T> implements DoubleSupplier {
+	        private final WeakReference<T> ref;
+	        private final ToDoubleFunction<T> value;
+
+	        WeakGauge(T obj, ToDoubleFunction<T> value) {
+	            this.ref = new WeakReference<>(obj);
+	            this.value = value;
+	        }
+
+	        boolean isCleared() { return ref.get() == null; }
+
+	        @Override
+	        public double getAsDouble() {
+	            T obj = ref.get();
+	            return obj == null ? Double.NaN : value.applyAsDouble(obj);
+	        }
+	    }
+	}
+
+	First consumers:-
+
+	-Bank (RaceConditionDemo): one counter per operation + balance gauge (one live Bank per id; tag it, e.g. "account", if there are several).
+
+	class Bank {
+	    private static final StripedCounter INCREMENTS = MetricsRegistry.GLOBAL.counter("bank_operations_total", "op", "increment");
+	    private static final StripedCounter DECREMENTS = MetricsRegistry.GLOBAL.counter("bank_operations_total", "op", "decrement");
+
+	    private int bal;
+
+	    Bank(int bal) {
+	        this.bal = bal;
+	        MetricsRegistry.GLOBAL.gauge("bank_balance", this, Bank::getBal);   // weak: a dropped Bank is not kept alive
+	    }
+
+	    public synchronized void increment() {
+	        bal++;
+	        INCREMENTS.increment();
+	    }
+
+	    public synchronized void decrement() {
+	        bal--;
+	        DECREMENTS.increment();
+	    }
+
+	    public synchronized int getBal() {
+	        return bal;
+	    }
+	}
+
+	-BankAccount (ReentrantLockDemoBank): how long withdrawers wait for funds.
+
+	// inside BankAccount
+	private static final Timer WITHDRAW_WAIT = MetricsRegistry.GLOBAL.timer("bank_withdraw_wait_seconds");
+
+	public void withdraw(int amount) throws InterruptedException {
+	    long start = WITHDRAW_WAIT.start();
+	    lock.lock();
+	    try {
+	        while (balance < amount) {
+	            sufficientFunds.await();
+	        }
+	        WITHDRAW_WAIT.stop(start);          // time from call until funds were available
+	        balance -= amount;
+	    } finally {
+	        lock.unlock();
+	    }
+	}
+
+	-OrderServiceDemo: latency per remote leg.
+
+	// inside OrderServiceDemo
+	static final Timer PAYMENT_LATENCY = MetricsRegistry.GLOBAL.timer("order_leg_latency_seconds", "leg", "payment");
+
+	CompletableFuture<String> paymentFuture =
+	        CompletableFuture.supplyAsync(() -> {
+	            long start = PAYMENT_LATENCY.start();
+	            try {
+	                return fetchPaymentStatus(orderId);
+	            } finally {
+	                PAYMENT_LATENCY.stop(start);
+	            }
+	        });
+
+	// once in main()
+	MetricsRegistry.GLOBAL.exportTo(Paths.get("/var/lib/node_exporter/orders.prom"), 15);
+
+	Output of scrape():-
+		# TYPE bank_balance gauge
+		bank_balance 100.0
+		# TYPE bank_operations_total counter
+		bank_operations_total{op="decrement"} 100000
+		bank_operations_total{op="increment"} 100000
+		# TYPE order_leg_latency_seconds summary
+		order_leg_latency_seconds{leg="payment",quantile="0.5"} 0.687865856
+		order_leg_latency_seconds{leg="payment",quantile="0.9"} 0.687865856
+		order_leg_latency_seconds{leg="payment",quantile="0.99"} 0.687865856
+		order_leg_latency_seconds{leg="payment",quantile="0.999"} 0.687865856
+		order_leg_latency_seconds_sum{leg="payment"} 0.700236593
+		order_leg_latency_seconds_count{leg="payment"} 1
+
+
+
 
 🔹 1. Thread Lifecycle States
 
@@ -1752,6 +3425,353 @@ Race Conditions:- Multiple Threads trying to access shared resource and concurre
 				}
 			}
 			
+Sharded Multi-Account Ledger (lock striping):-
+	-synchronized methods on Bank = one monitor for everything → only one operation at a time, no matter how many accounts.
+	-Lock striping: N locks (stripes), account id → stripe (id & (N - 1)). Operations on different stripes run in parallel.
+		1M accounts with 1024 stripes → 1024 independent locks instead of 1, and 1024 objects instead of 1M locks.
+	-transfer(from, to, amount) needs two stripes → always lock the LOWER stripe index first.
+		Every thread acquires locks in the same global order → no circular wait → no deadlock (see Deadlock section).
+		Same stripe for both accounts → lock once (ReentrantLock would allow twice, but once is cheaper).
+	-Batch posting: transfers are applied in submission order (A→B then B→C must see the money that just arrived in B).
+		Only lock acquisition is sorted: consecutive transfers form a run touching at most 8 stripes,
+		the run's stripes are locked in ascending order once, then its transfers are applied one after another.
+		Sorting the transfers themselves would change which ones fail for insufficient funds.
+	-totalBalance() locks all stripes in ascending order → consistent snapshot (money is never "in flight").
+	Example:-
+
+	import java.util.*;
+	import java.util.concurrent.*;
+	import java.util.concurrent.locks.ReentrantLock;
+
+	class Ledger {
+
+	    static final class Transfer {
+	        final int from, to;
+	        final long amount;
+
+	        Transfer(int from, int to, long amount) {
+	            this.from = from;
+	            this.to = to;
+	            this.amount = amount;
+	        }
+	    }
+
+	    private static final int MAX_STRIPES_PER_RUN = 8;
+
+	    private final long[] balances;
+	    private final ReentrantLock[] stripes;
+	    private final int mask;
+
+	    Ledger(int accounts, long initialBalance, int stripeCount) {
+	        if (Integer.bitCount(stripeCount) != 1) throw new IllegalArgumentException("stripeCount must be a power of 2");
+	        balances = new long[accounts];
+	        Arrays.fill(balances, initialBalance);
+	        stripes = new ReentrantLock[stripeCount];
+	        for (int i = 0; i < stripeCount; i++) stripes[i] = new ReentrantLock();
+	        mask = stripeCount - 1;
+	    }
+
+	    private int stripe(int account) {
+	        return account & mask;
+	    }
+
+	    long getBalance(int account) {
+	        ReentrantLock lock = stripes[stripe(account)];
+	        lock.lock();
+	        try {
+	            return balances[account];
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    // false → insufficient funds, nothing changed
+	    boolean transfer(int from, int to, long amount) {
+	        if (amount <= 0 || from == to) throw new IllegalArgumentException("invalid transfer");
+	        int a = stripe(from), b = stripe(to);
+	        ReentrantLock first = stripes[Math.min(a, b)];   // global order: lower stripe first
+	        ReentrantLock second = stripes[Math.max(a, b)];
+	        first.lock();
+	        try {
+	            if (second != first) second.lock();
+	            try {
+	                return apply(from, to, amount);
+	            } finally {
+	                if (second != first) second.unlock();
+	            }
+	        } finally {
+	            first.unlock();
+	        }
+	    }
+
+	    // Returns the number of rejected transfers (insufficient funds).
+	    // Transfers are applied in submission order (A→B before B→C keeps its meaning), only lock acquisition is sorted:
+	    // consecutive transfers are grouped into runs touching at most MAX_STRIPES_PER_RUN stripes, one acquisition per run.
+	    int postBatch(List<Transfer> batch) {
+	        BitSet run = new BitSet(stripes.length);
+	        int rejected = 0, runStart = 0;
+	        for (int i = 0; i < batch.size(); i++) {
+	            Transfer t = batch.get(i);
+	            int a = stripe(t.from), b = stripe(t.to);
+	            int added = (run.get(a) ? 0 : 1) + (a == b || run.get(b) ? 0 : 1);
+	            if (run.cardinality() + added > MAX_STRIPES_PER_RUN) {
+	                rejected += applyRun(batch, runStart, i, run);
+	                runStart = i;
+	                run.clear();
+	            }
+	            run.set(a);
+	            run.set(b);
+	        }
+	        return rejected + applyRun(batch, runStart, batch.size(), run);
+	    }
+
+	    // Stripes locked in ascending order (same global order as transfer()), transfers applied in list order
+	    private int applyRun(List<Transfer> batch, int from, int to, BitSet run) {
+	        for (int s = run.nextSetBit(0); s >= 0; s = run.nextSetBit(s + 1)) stripes[s].lock();
+	        try {
+	            int rejected = 0;
+	            for (int i = from; i < to; i++) {
+	                Transfer t = batch.get(i);
+	                if (!apply(t.from, t.to, t.amount)) rejected++;
+	            }
+	            return rejected;
+	        } finally {
+	            for (int s = run.nextSetBit(0); s >= 0; s = run.nextSetBit(s + 1)) stripes[s].unlock();
+	        }
+	    }
+
+	    long totalBalance() {
+	        for (ReentrantLock lock : stripes) lock.lock();          // ascending order
+	        try {
+	            long total = 0;
+	            for (long b : balances) total += b;
+	            return total;
+	        } finally {
+	            for (int i = stripes.length - 1; i >= 0; i--) stripes[i].unlock();
+	        }
+	    }
+
+	    private boolean apply(int from, int to, long amount) {
+	        if (from == to || amount <= 0) return false;
+	        if (balances[from] < amount) return false;
+	        balances[from] -= amount;
+	        balances[to] += amount;
+	        return true;
+	    }
+	}
+
+	public class LedgerBenchmark {
+
+	    static void run(String name, int threads, int opsPerThread, Ledger ledger, boolean batched) throws Exception {
+	        ExecutorService pool = Executors.newFixedThreadPool(threads);
+	        int accounts = 1_000_000;
+	        CountDownLatch start = new CountDownLatch(1);
+	        List<Future<?>> done = new ArrayList<>();
+	        for (int t = 0; t < threads; t++) {
+	            done.add(pool.submit(() -> {
+	                ThreadLocalRandom r = ThreadLocalRandom.current();
+	                start.await();
+	                if (batched) {
+	                    List<Ledger.Transfer> batch = new ArrayList<>(1000);
+	                    for (int i = 0; i < opsPerThread; i++) {
+	                        batch.add(new Ledger.Transfer(r.nextInt(accounts), r.nextInt(accounts), 1 + r.nextInt(50)));
+	                        if (batch.size() == 1000) {
+	                            ledger.postBatch(batch);
+	                            batch.clear();
+	                        }
+	                    }
+	                    ledger.postBatch(batch);
+	                } else {
+	                    for (int i = 0; i < opsPerThread; i++) {
+	                        int from = r.nextInt(accounts), to = r.nextInt(accounts);
+	                        if (from != to) ledger.transfer(from, to, 1 + r.nextInt(50));
+	                    }
+	                }
+	                return null;
+	            }));
+	        }
+	        long begin = System.nanoTime();
+	        start.countDown();
+	        for (Future<?> f : done) f.get();
+	        long ns = System.nanoTime() - begin;
+	        pool.shutdown();
+	        long opsPerSec = (long) threads * opsPerThread * 1_000_000_000L / ns;
+	        System.out.printf("%-28s %,12d transfers/s   total=%,d%n", name, opsPerSec, ledger.totalBalance());
+	    }
+
+	    public static void main(String[] args) throws Exception {
+	        int threads = 32, ops = 200_000;
+	        run("1 stripe (= one monitor)", threads, ops, new Ledger(1_000_000, 100, 1), false);
+	        run("1024 stripes", threads, ops, new Ledger(1_000_000, 100, 1024), false);
+	        run("1024 stripes, batches 1000", threads, ops, new Ledger(1_000_000, 100, 1024), true);
+	    }
+	}
+
+	-total must stay 100,000,000 (1M accounts x 100) in every run → no money created or lost.
+	-Run it on a machine with many cores: with 1 stripe the 32 threads queue on one lock, with 1024 stripes they rarely meet.
+	-Batching pays off when consecutive transfers hit the same few stripes (settlement files, hot merchant accounts).
+	 For uniformly random transfers a run holds only ~4 transfers → little is saved, post them one by one.
+
+Lock-free Account Balance (CAS with overdraft check):-
+	-For ONE account, a monitor is more than needed: the whole state is a single long.
+	-deposit(amount) → VarHandle getAndAdd (LOCK XADD on x86), never fails, no loop.
+	-tryWithdraw(amount) → CAS loop that only writes when the balance is sufficient:
+		read balance → if balance < amount return false (nothing written) → CAS(balance, balance - amount) → retry on failure.
+	-Balance can never go negative: the check and the write are one atomic CAS on the value that was checked.
+	-Backoff under contention: after a failed CAS spin briefly (Thread.onSpinWait), double the spins each time,
+	 after a few rounds park for a microsecond → fewer cache line fights when many threads hit the same account.
+	-VarHandle on a plain volatile field instead of AtomicLong → one object less per account (matters with 1M accounts).
+	-Not a replacement for multi-account work (transfer): two balances can't be changed with one CAS → use the ledger above.
+	Example:-
+
+	import java.lang.invoke.MethodHandles;
+	import java.lang.invoke.VarHandle;
+	import java.util.concurrent.*;
+	import java.util.concurrent.atomic.LongAdder;
+	import java.util.concurrent.locks.LockSupport;
+	import java.util.concurrent.locks.ReentrantLock;
+
+	interface Account {
+	    void deposit(long amount);
+	    boolean tryWithdraw(long amount);
+	    long getBalance();
+	}
+
+	class CasAccount implements Account {
+	    private static final VarHandle BALANCE;
+
+	    static {
+	        try {
+	            BALANCE = MethodHandles.lookup().findVarHandle(CasAccount.class, "balance", long.class);
+	        } catch (ReflectiveOperationException e) {
+	            throw new ExceptionInInitializerError(e);
+	        }
+	    }
+
+	    private volatile long balance;
+
+	    CasAccount(long balance) {
+	        this.balance = balance;
+	    }
+
+	    @Override
+	    public void deposit(long amount) {
+	        if (amount <= 0) throw new IllegalArgumentException("amount must be positive");
+	        BALANCE.getAndAdd(this, amount);
+	    }
+
+	    @Override
+	    public boolean tryWithdraw(long amount) {
+	        if (amount <= 0) throw new IllegalArgumentException("amount must be positive");
+	        int spins = 1;
+	        for (;;) {
+	            long current = balance;
+	            if (current < amount) return false;                    // overdraft → fail without writing
+	            if (BALANCE.compareAndSet(this, current, current - amount)) return true;
+	            // lost the race: back off before retrying
+	            if (spins <= 64) {
+	                for (int i = 0; i < spins; i++) Thread.onSpinWait();
+	                spins <<= 1;
+	            } else {
+	                LockSupport.parkNanos(1_000);
+	            }
+	        }
+	    }
+
+	    @Override
+	    public long getBalance() {
+	        return balance;
+	    }
+	}
+
+	class SynchronizedAccount implements Account {
+	    private long balance;
+
+	    SynchronizedAccount(long balance) { this.balance = balance; }
+
+	    public synchronized void deposit(long amount) { balance += amount; }
+
+	    public synchronized boolean tryWithdraw(long amount) {
+	        if (balance < amount) return false;
+	        balance -= amount;
+	        return true;
+	    }
+
+	    public synchronized long getBalance() { return balance; }
+	}
+
+	class LockAccount implements Account {
+	    private final ReentrantLock lock = new ReentrantLock();
+	    private long balance;
+
+	    LockAccount(long balance) { this.balance = balance; }
+
+	    public void deposit(long amount) {
+	        lock.lock();
+	        try { balance += amount; } finally { lock.unlock(); }
+	    }
+
+	    public boolean tryWithdraw(long amount) {
+	        lock.lock();
+	        try {
+	            if (balance < amount) return false;
+	            balance -= amount;
+	            return true;
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    public long getBalance() {
+	        lock.lock();
+	        try { return balance; } finally { lock.unlock(); }
+	    }
+	}
+
+	public class AccountBenchmark {
+
+	    // Half the threads deposit 1, half withdraw 1; checks that nothing is lost and balance never < 0
+	    static void run(String name, Account account, int threads, int ops) throws Exception {
+	        ExecutorService pool = Executors.newFixedThreadPool(threads);
+	        CountDownLatch start = new CountDownLatch(1);
+	        LongAdder withdrawn = new LongAdder();
+	        Future<?>[] done = new Future<?>[threads];
+	        for (int t = 0; t < threads; t++) {
+	            boolean depositor = t % 2 == 0;
+	            done[t] = pool.submit(() -> {
+	                start.await();
+	                for (int i = 0; i < ops; i++) {
+	                    if (depositor) account.deposit(1);
+	                    else if (account.tryWithdraw(1)) withdrawn.increment();
+	                }
+	                return null;
+	            });
+	        }
+	        long begin = System.nanoTime();
+	        start.countDown();
+	        for (Future<?> f : done) f.get();
+	        long ns = System.nanoTime() - begin;
+	        pool.shutdown();
+	        long deposited = (long) (threads + 1) / 2 * ops;
+	        System.out.printf("%-14s %,12d ops/s  consistent=%b%n", name, (long) threads * ops * 1_000_000_000L / ns,
+	                account.getBalance() == 1_000 + deposited - withdrawn.sum());
+	    }
+
+	    public static void main(String[] args) throws Exception {
+	        for (int threads : new int[] { 1, 4, 16 }) {
+	            System.out.println("threads=" + threads);
+	            run("synchronized", new SynchronizedAccount(1_000), threads, 1_000_000);
+	            run("ReentrantLock", new LockAccount(1_000), threads, 1_000_000);
+	            run("CAS", new CasAccount(1_000), threads, 1_000_000);
+	        }
+	    }
+	}
+
+	-consistent=true → final balance = initial + deposits - successful withdrawals, for every implementation.
+	-Compare the three only on a multi-core machine: on 1 core no CAS ever fails and locks are never contended.
+
+
+			
 🔹 1. What is ReentrantLock?
 
 	ReentrantLock is a lock implementation in the java.util.concurrent.locks package.
@@ -1859,6 +3879,562 @@ Example:-
 		}
 	}
 	
+Amount-ordered Waiters instead of signalAll():-
+	-deposit() calls sufficientFunds.signalAll() → EVERY waiting withdrawer wakes up, takes the lock one by one,
+	 re-checks while (balance < amount) and most of them go back to sleep (thundering herd).
+	-Each wakeup = context switch + lock hand-off, all while holding a fair lock → deposits also wait behind them.
+	-Fix: one Condition per waiter, waiters kept in a TreeSet ordered by requested amount (then arrival order).
+		deposit → walk waiters from the smallest amount, signal only those the new balance can pay for.
+		Signalled waiter re-checks anyway (another thread may have withdrawn in between) and re-queues if needed.
+	-Trade-off: small withdrawals are served first, a very large one can wait longer than with FIFO.
+	 If that matters, stop signalling once the head of the queue can't be paid (strict FIFO by amount order).
+	-The demo counts wakeups (returns from await()) for both versions with the same workload.
+	Example:-
+
+	import java.util.*;
+	import java.util.concurrent.*;
+	import java.util.concurrent.atomic.AtomicLong;
+	import java.util.concurrent.locks.*;
+
+	interface WaitingAccount {
+	    void deposit(int amount);
+	    void withdraw(int amount) throws InterruptedException;
+	    long wakeups();
+	}
+
+	// Original behavior: one Condition, signalAll()
+	class SignalAllBankAccount implements WaitingAccount {
+	    private int balance;
+	    private final Lock lock = new ReentrantLock(true);
+	    private final Condition sufficientFunds = lock.newCondition();
+	    private final AtomicLong wakeups = new AtomicLong();
+
+	    public void deposit(int amount) {
+	        lock.lock();
+	        try {
+	            balance += amount;
+	            sufficientFunds.signalAll();
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    public void withdraw(int amount) throws InterruptedException {
+	        lock.lock();
+	        try {
+	            while (balance < amount) {
+	                sufficientFunds.await();
+	                wakeups.incrementAndGet();
+	            }
+	            balance -= amount;
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    public long wakeups() { return wakeups.get(); }
+	}
+
+	class OrderedWaitBankAccount implements WaitingAccount {
+
+	    private static final class Waiter {
+	        final int amount;
+	        final long seq;
+	        final Condition condition;
+
+	        Waiter(int amount, long seq, Condition condition) {
+	            this.amount = amount;
+	            this.seq = seq;
+	            this.condition = condition;
+	        }
+	    }
+
+	    private int balance;
+	    private long nextSeq;
+	    private final Lock lock = new ReentrantLock(true);
+	    private final TreeSet<Waiter> waiters = new TreeSet<>(
+	            Comparator.<Waiter>comparingInt(w -> w.amount).thenComparingLong(w -> w.seq));
+	    private final AtomicLong wakeups = new AtomicLong();
+
+	    public void deposit(int amount) {
+	        lock.lock();
+	        try {
+	            balance += amount;
+	            signalEligible();
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    public void withdraw(int amount) throws InterruptedException {
+	        lock.lock();
+	        try {
+	            Waiter me = null;
+	            while (balance < amount) {
+	                if (me == null) me = new Waiter(amount, nextSeq++, lock.newCondition());
+	                waiters.add(me);
+	                try {
+	                    me.condition.await();
+	                    wakeups.incrementAndGet();
+	                } catch (InterruptedException e) {
+	                    // The signal may have been meant for us → hand the money on before leaving
+	                    waiters.remove(me);
+	                    signalEligible();
+	                    throw e;
+	                } finally {
+	                    waiters.remove(me);               // interrupted or spurious wakeup → leave the queue
+	                }
+	            }
+	            balance -= amount;
+	        } finally {
+	            lock.unlock();
+	        }
+	    }
+
+	    // Caller holds the lock. Wake only the withdrawers the balance can satisfy, smallest first
+	    private void signalEligible() {
+	        long available = balance;
+	        while (!waiters.isEmpty() && waiters.first().amount <= available) {
+	            Waiter w = waiters.pollFirst();
+	            available -= w.amount;
+	            w.condition.signal();
+	        }
+	    }
+
+	    public long wakeups() { return wakeups.get(); }
+	}
+
+	public class WakeupCountDemo {
+
+	    // 50 withdrawers ask for 100..5000, one depositor adds 100 at a time until all are paid
+	    static long run(WaitingAccount account) throws Exception {
+	        int withdrawers = 50;
+	        ExecutorService pool = Executors.newFixedThreadPool(withdrawers);
+	        List<Future<?>> done = new ArrayList<>();
+	        long total = 0;
+	        for (int i = 1; i <= withdrawers; i++) {
+	            int amount = i * 100;
+	            total += amount;
+	            done.add(pool.submit(() -> {
+	                account.withdraw(amount);
+	                return null;
+	            }));
+	        }
+	        Thread.sleep(200);                            // let everybody start waiting
+	        for (long deposited = 0; deposited < total; deposited += 100) {
+	            account.deposit(100);
+	        }
+	        for (Future<?> f : done) f.get();
+	        pool.shutdown();
+	        return account.wakeups();
+	    }
+
+	    public static void main(String[] args) throws Exception {
+	        System.out.println("signalAll() wakeups      : " + run(new SignalAllBankAccount()));
+	        System.out.println("amount-ordered wakeups   : " + run(new OrderedWaitBankAccount()));
+	    }
+	}
+
+	Sample output (numbers vary per run, the gap does not):-
+		signalAll() wakeups      : 22100
+		amount-ordered wakeups   : 50
+	-50 withdrawers → 50 wakeups, here every wakeup ended in a successful withdraw.
+
+StampedLock Optimistic Reads for getBalance():-
+	-Dashboards call getBalance() far more often than deposit()/withdraw().
+	-Unlocked read of balance → may see a stale value (no happens-before). Reading under the fair ReentrantLock(true) → readers queue behind each other AND behind writers.
+	-StampedLock (Java 8) has 3 modes: write lock, read lock, optimistic read.
+		tryOptimisticRead() → returns a stamp, takes NO lock, writes nothing to shared memory.
+		read the fields into locals.
+		validate(stamp) → true if no writer got the lock in between → locals are consistent, done.
+		validate fails → fall back to a real readLock() (pessimistic) and read again.
+	-Writers are never blocked by optimistic readers → reads scale with cores, writes keep their latency.
+	-StampedLock is not reentrant and has no Conditions → withdraw returns false instead of waiting for funds.
+	-Fairness is a choice: StampedLock has no fair mode. ReentrantReadWriteLock(fair) is kept as an option for
+	 cases where writer starvation matters more than throughput (fair mode hands the lock over in arrival order → far slower).
+	Example:-
+
+	import java.util.concurrent.*;
+	import java.util.concurrent.locks.*;
+
+	interface ReadMostlyAccount {
+	    void deposit(long amount);
+	    boolean withdraw(long amount);
+	    long getBalance();
+
+	    enum Mode { OPTIMISTIC, READ_WRITE_UNFAIR, READ_WRITE_FAIR }
+
+	    static ReadMostlyAccount create(Mode mode, long balance) {
+	        switch (mode) {
+	            case OPTIMISTIC: return new StampedBankAccount(balance);
+	            case READ_WRITE_FAIR: return new ReadWriteBankAccount(balance, true);
+	            default: return new ReadWriteBankAccount(balance, false);
+	        }
+	    }
+	}
+
+	class StampedBankAccount implements ReadMostlyAccount {
+	    private final StampedLock lock = new StampedLock();
+	    private long balance;
+
+	    StampedBankAccount(long balance) {
+	        this.balance = balance;
+	    }
+
+	    public long getBalance() {
+	        long stamp = lock.tryOptimisticRead();     // 0 if a writer holds the lock right now
+	        long current = balance;
+	        if (stamp != 0 && lock.validate(stamp)) {
+	            return current;                        // no writer in between → value is consistent
+	        }
+	        stamp = lock.readLock();                   // fallback: pessimistic read
+	        try {
+	            return balance;
+	        } finally {
+	            lock.unlockRead(stamp);
+	        }
+	    }
+
+	    public void deposit(long amount) {
+	        long stamp = lock.writeLock();
+	        try {
+	            balance += amount;
+	        } finally {
+	            lock.unlockWrite(stamp);
+	        }
+	    }
+
+	    public boolean withdraw(long amount) {
+	        long stamp = lock.writeLock();
+	        try {
+	            if (balance < amount) return false;
+	            balance -= amount;
+	            return true;
+	        } finally {
+	            lock.unlockWrite(stamp);
+	        }
+	    }
+	}
+
+	class ReadWriteBankAccount implements ReadMostlyAccount {
+	    private final ReentrantReadWriteLock lock;
+	    private long balance;
+
+	    ReadWriteBankAccount(long balance, boolean fair) {
+	        this.balance = balance;
+	        this.lock = new ReentrantReadWriteLock(fair);
+	    }
+
+	    public long getBalance() {
+	        lock.readLock().lock();
+	        try {
+	            return balance;
+	        } finally {
+	            lock.readLock().unlock();
+	        }
+	    }
+
+	    public void deposit(long amount) {
+	        lock.writeLock().lock();
+	        try {
+	            balance += amount;
+	        } finally {
+	            lock.writeLock().unlock();
+	        }
+	    }
+
+	    public boolean withdraw(long amount) {
+	        lock.writeLock().lock();
+	        try {
+	            if (balance < amount) return false;
+	            balance -= amount;
+	            return true;
+	        } finally {
+	            lock.writeLock().unlock();
+	        }
+	    }
+	}
+
+	public class ReadRatioBenchmark {
+
+	    static long run(ReadMostlyAccount account, int readPercent, int threads, int opsPerThread) throws Exception {
+	        ExecutorService pool = Executors.newFixedThreadPool(threads);
+	        CountDownLatch start = new CountDownLatch(1);
+	        Future<?>[] done = new Future<?>[threads];
+	        for (int t = 0; t < threads; t++) {
+	            done[t] = pool.submit(() -> {
+	                ThreadLocalRandom r = ThreadLocalRandom.current();
+	                long sink = 0;
+	                start.await();
+	                for (int i = 0; i < opsPerThread; i++) {
+	                    int dice = r.nextInt(100);
+	                    if (dice < readPercent) sink += account.getBalance();
+	                    else if ((dice & 1) == 0) account.deposit(10);
+	                    else account.withdraw(10);
+	                }
+	                return sink;
+	            });
+	        }
+	        long begin = System.nanoTime();
+	        start.countDown();
+	        for (Future<?> f : done) f.get();
+	        long ns = System.nanoTime() - begin;
+	        pool.shutdown();
+	        return (long) threads * opsPerThread * 1_000_000_000L / ns;
+	    }
+
+	    public static void main(String[] args) throws Exception {
+	        int threads = Runtime.getRuntime().availableProcessors() * 2;
+	        System.out.printf("%-8s %18s %18s %18s%n", "reads", "OPTIMISTIC", "RW_UNFAIR", "RW_FAIR");
+	        for (int readPercent : new int[] { 50, 75, 90, 95, 99 }) {
+	            System.out.printf("%-8s", readPercent + "/" + (100 - readPercent));
+	            for (ReadMostlyAccount.Mode mode : ReadMostlyAccount.Mode.values()) {
+	                int ops = mode == ReadMostlyAccount.Mode.READ_WRITE_FAIR ? 50_000 : 1_000_000;
+	                System.out.printf(" %,14d ops/s", run(ReadMostlyAccount.create(mode, 1_000), readPercent, threads, ops));
+	            }
+	            System.out.println();
+	        }
+	    }
+	}
+
+	-Run on the target hardware: the gap grows with the number of cores and the share of reads.
+	-Fair mode runs fewer ops per thread in the demo only to keep the run short, ops/s are still comparable.
+
+Instrumented Lock (contention, wait and hold times):-
+	-tryLock(), isLocked(), getHoldCount() tell the state NOW, they don't tell how contended a lock was over the last hour.
+	-InstrumentedLock implements Lock, wraps a ReentrantLock → drop-in wherever a Lock field is used.
+	-Recorded per named lock into the metrics registry (see Lock-free Metrics Registry):
+		lock_wait_seconds{lock=...}      → time from lock() call until acquired (only measured when the fast path fails)
+		lock_hold_seconds{lock=...}      → time from first acquire until the last unlock (outermost, reentrant holds are not counted twice)
+		lock_queue_length{lock=...}      → getQueueLength() sampled on every contended acquire
+		lock_acquire_total{lock=...,result=acquired|contended|try_failed}
+	-Disabled → static final flag (-Dlocks.instrumented=false) is constant-folded by the JIT → the wrapper is a plain delegate call.
+	-Fast path = tryLock(0, NANOSECONDS), which honours fairness. Plain tryLock() barges past queued threads even on a
+	 fair lock → wrapping new ReentrantLock(true) would silently make it unfair.
+	-Condition.await() releases the lock and another thread becomes the owner → newCondition() returns a wrapper that
+	 remembers the hold time so far and restores holdStart after await() re-acquires → hold time excludes the wait.
+	Example:-
+
+	import java.util.Date;
+	import java.util.concurrent.TimeUnit;
+	import java.util.concurrent.locks.Condition;
+	import java.util.concurrent.locks.Lock;
+	import java.util.concurrent.locks.ReentrantLock;
+
+	final class InstrumentedLock implements Lock {
+
+	    static final boolean ENABLED = !"false".equals(System.getProperty("locks.instrumented"));
+
+	    private final ReentrantLock delegate;
+	    private final Timer waitTime;
+	    private final Histogram holdTime;
+	    private final Histogram queueLength;
+	    private final StripedCounter acquired;
+	    private final StripedCounter contended;
+	    private final StripedCounter tryFailed;
+	    private long holdStart;                    // written only by the owner thread (await() saves/restores it, see below)
+
+	    InstrumentedLock(String name, boolean fair) {
+	        delegate = new ReentrantLock(fair);
+	        MetricsRegistry m = MetricsRegistry.GLOBAL;
+	        waitTime = m.timer("lock_wait_seconds", "lock", name);
+	        holdTime = m.timer("lock_hold_seconds", "lock", name).histogram;
+	        queueLength = new Histogram();
+	        m.gauge("lock_queue_length", () -> queueLength.percentiles(0.99)[0], "lock", name, "quantile", "0.99");
+	        acquired = m.counter("lock_acquire_total", "lock", name, "result", "acquired");
+	        contended = m.counter("lock_acquire_total", "lock", name, "result", "contended");
+	        tryFailed = m.counter("lock_acquire_total", "lock", name, "result", "try_failed");
+	    }
+
+	    @Override
+	    public void lock() {
+	        if (!ENABLED) {
+	            delegate.lock();
+	            return;
+	        }
+	        if (!tryFast()) {                      // fast path failed → we are going to wait
+	            contended.increment();
+	            queueLength.record(delegate.getQueueLength());
+	            long start = waitTime.start();
+	            delegate.lock();
+	            waitTime.stop(start);
+	        }
+	        onAcquired();
+	    }
+
+	    @Override
+	    public void lockInterruptibly() throws InterruptedException {
+	        if (!ENABLED) {
+	            delegate.lockInterruptibly();
+	            return;
+	        }
+	        if (!delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+	            contended.increment();
+	            queueLength.record(delegate.getQueueLength());
+	            long start = waitTime.start();
+	            delegate.lockInterruptibly();
+	            waitTime.stop(start);
+	        }
+	        onAcquired();
+	    }
+
+	    @Override
+	    public boolean tryLock() {
+	        if (!ENABLED) return delegate.tryLock();
+	        if (delegate.tryLock()) {
+	            onAcquired();
+	            return true;
+	        }
+	        tryFailed.increment();
+	        return false;
+	    }
+
+	    @Override
+	    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+	        if (!ENABLED) return delegate.tryLock(time, unit);
+	        if (delegate.tryLock(0, TimeUnit.NANOSECONDS)) {
+	            onAcquired();
+	            return true;
+	        }
+	        contended.increment();
+	        queueLength.record(delegate.getQueueLength());
+	        long start = waitTime.start();
+	        if (delegate.tryLock(time, unit)) {
+	            waitTime.stop(start);
+	            onAcquired();
+	            return true;
+	        }
+	        tryFailed.increment();
+	        return false;
+	    }
+
+	    @Override
+	    public void unlock() {
+	        if (ENABLED && delegate.getHoldCount() == 1) {     // outermost unlock
+	            holdTime.record(System.nanoTime() - holdStart);
+	        }
+	        delegate.unlock();
+	    }
+
+	    @Override
+	    public Condition newCondition() {
+	        return ENABLED ? new InstrumentedCondition(delegate.newCondition()) : delegate.newCondition();
+	    }
+
+	    // Same introspection as ReentrantLock, so existing callers keep working
+	    boolean isLocked() { return delegate.isLocked(); }
+	    boolean isHeldByCurrentThread() { return delegate.isHeldByCurrentThread(); }
+	    int getHoldCount() { return delegate.getHoldCount(); }
+
+	    // tryLock(0, ns) honours fairness; plain tryLock() barges past queued threads even on a fair lock
+	    private boolean tryFast() {
+	        try {
+	            return delegate.tryLock(0, TimeUnit.NANOSECONDS);
+	        } catch (InterruptedException e) {
+	            Thread.currentThread().interrupt();   // lock() is not interruptible, keep the flag for the caller
+	            return false;
+	        }
+	    }
+
+	    private void onAcquired() {
+	        acquired.increment();
+	        if (delegate.getHoldCount() == 1) holdStart = System.nanoTime();
+	    }
+
+	    // await() releases the lock and another thread becomes owner (and writes holdStart) →
+	    // remember how long we held it so far, restore holdStart once await() has re-acquired the lock
+	    private final class InstrumentedCondition implements Condition {
+	        private final Condition condition;
+
+	        InstrumentedCondition(Condition condition) {
+	            this.condition = condition;
+	        }
+
+	        @Override
+	        public void await() throws InterruptedException {
+	            long held = System.nanoTime() - holdStart;
+	            try {
+	                condition.await();
+	            } finally {
+	                holdStart = System.nanoTime() - held;
+	            }
+	        }
+
+	        @Override
+	        public void awaitUninterruptibly() {
+	            long held = System.nanoTime() - holdStart;
+	            condition.awaitUninterruptibly();
+	            holdStart = System.nanoTime() - held;
+	        }
+
+	        @Override
+	        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+	            long held = System.nanoTime() - holdStart;
+	            try {
+	                return condition.awaitNanos(nanosTimeout);
+	            } finally {
+	                holdStart = System.nanoTime() - held;
+	            }
+	        }
+
+	        @Override
+	        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+	            long held = System.nanoTime() - holdStart;
+	            try {
+	                return condition.await(time, unit);
+	            } finally {
+	                holdStart = System.nanoTime() - held;
+	            }
+	        }
+
+	        @Override
+	        public boolean awaitUntil(Date deadline) throws InterruptedException {
+	            long held = System.nanoTime() - holdStart;
+	            try {
+	                return condition.awaitUntil(deadline);
+	            } finally {
+	                holdStart = System.nanoTime() - held;
+	            }
+	        }
+
+	        @Override
+	        public void signal() { condition.signal(); }
+
+	        @Override
+	        public void signalAll() { condition.signalAll(); }
+	    }
+	}
+
+	First adopters:-
+
+	-BankAccount: only the field declaration changes, deposit()/withdraw() and the Condition stay as they are.
+
+	class BankAccount {
+	    private int balance = 1000;
+	    Lock lock = new InstrumentedLock("bankAccount", true);   // was: new ReentrantLock(true)
+	    private Condition sufficientFunds = lock.newCondition();
+	    // deposit(), withdraw(), getBalance() unchanged
+	}
+
+	-ReentrantLockDemoBank: account.lock.tryLock() now feeds lock_acquire_total{result="try_failed"} → "could not acquire lock, skipping withdraw"
+	 becomes a rate on a dashboard. Dump the registry at the end of main():
+
+	t1.join(); t2.join(); t3.join();
+	System.out.print(MetricsRegistry.GLOBAL.scrape());
+
+	Output (shape):-
+		# TYPE lock_acquire_total counter
+		lock_acquire_total{lock="bankAccount",result="acquired"} 15
+		lock_acquire_total{lock="bankAccount",result="contended"} 2
+		lock_acquire_total{lock="bankAccount",result="try_failed"} 1
+		# TYPE lock_hold_seconds summary
+		lock_hold_seconds{lock="bankAccount",quantile="0.5"} ...
+		# TYPE lock_wait_seconds summary
+		lock_wait_seconds{lock="bankAccount",quantile="0.99"} ...
+
+
+
+	
 Deadlock:-
 	-two or more threads are blocked forever, each waiting for a resource held by another thread.
 
@@ -1963,10 +4539,279 @@ B. TryLock with Timeout (ReentrantLock)
 				lock1.unlock();
 			}
 		}
+
+	LockSet.acquireAll(Lock...) (reusable version of A + B):-
+		-Nested tryLock blocks by hand → easy to forget an unlock, and each call site must agree on the order.
+		-acquireAll(locks):
+			sort the locks by a stable identity (System.identityHashCode) → same global order everywhere (A. Lock Ordering).
+			tryLock(timeout) each one in that order.
+			one timeout → release everything taken so far, sleep a random time, double the max backoff, try again (B. TryLock with Timeout).
+		-Randomized backoff → two threads that collided don't retry in lock-step again.
+		-identityHashCode can collide (rare): two locks with the same hash may be taken in different orders,
+		 but the timeout + release makes that a short retry, never a deadlock.
+		-Returns an AutoCloseable → try-with-resources releases all locks in reverse order.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.LongAdder;
+		import java.util.concurrent.locks.Lock;
+		import java.util.concurrent.locks.ReentrantLock;
+
+		final class LockSet {
+
+		    private static final long MAX_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+		    static final LongAdder RETRIES = new LongAdder();
+
+		    private LockSet() {
+		    }
+
+		    static final class Held implements AutoCloseable {
+		        private final Lock[] locks;
+
+		        private Held(Lock[] locks) {
+		            this.locks = locks;
+		        }
+
+		        @Override
+		        public void close() {
+		            for (int i = locks.length - 1; i >= 0; i--) locks[i].unlock();
+		        }
+		    }
+
+		    static Held acquireAll(Lock... locks) throws InterruptedException {
+		        return acquireAll(50, TimeUnit.MILLISECONDS, locks);
+		    }
+
+		    static Held acquireAll(long attemptTimeout, TimeUnit unit, Lock... locks) throws InterruptedException {
+		        Lock[] ordered = locks.clone();
+		        Arrays.sort(ordered, Comparator.comparingInt(System::identityHashCode));
+		        long backoff = TimeUnit.MICROSECONDS.toNanos(10);
+		        for (;;) {
+		            int taken = 0;
+		            try {
+		                while (taken < ordered.length && ordered[taken].tryLock(attemptTimeout, unit)) {
+		                    taken++;
+		                }
+		            } finally {
+		                if (taken < ordered.length) {             // timeout or interrupt → give everything back
+		                    for (int i = taken - 1; i >= 0; i--) ordered[i].unlock();
+		                }
+		            }
+		            if (taken == ordered.length) return new Held(ordered);
+
+		            RETRIES.increment();
+		            TimeUnit.NANOSECONDS.sleep(ThreadLocalRandom.current().nextLong(backoff) + 1);
+		            backoff = Math.min(backoff * 2, MAX_BACKOFF_NANOS);
+		        }
+		    }
+		}
+
+		public class LockSetDemo {
+		    public static void main(String[] args) throws Exception {
+		        Lock r1 = new ReentrantLock();
+		        Lock r2 = new ReentrantLock();
+		        int threads = 8, iterations = 100_000;
+		        long[] counter = new long[1];                          // guarded by r1 + r2
+
+		        ExecutorService pool = Executors.newFixedThreadPool(threads);
+		        List<Future<?>> done = new ArrayList<>();
+		        long start = System.nanoTime();
+		        for (int t = 0; t < threads; t++) {
+		            // Half the threads ask for (r1, r2), half for (r2, r1) → the DeadLockDemo pattern
+		            Lock[] order = t % 2 == 0 ? new Lock[] { r1, r2 } : new Lock[] { r2, r1 };
+		            done.add(pool.submit(() -> {
+		                for (int i = 0; i < iterations; i++) {
+		                    try (LockSet.Held held = LockSet.acquireAll(order)) {
+		                        counter[0]++;
+		                    }
+		                }
+		                return null;
+		            }));
+		        }
+		        for (Future<?> f : done) f.get(1, TimeUnit.MINUTES);   // would time out on a deadlock
+		        long ms = (System.nanoTime() - start) / 1_000_000;
+		        pool.shutdown();
+
+		        System.out.println("Count      = " + counter[0]);     // 800000
+		        System.out.println("Throughput = " + (long) threads * iterations * 1000 / Math.max(ms, 1) + " acquisitions/s");
+		        System.out.println("Retries    = " + LockSet.RETRIES.sum());
+		    }
+		}
+
+		-Count = 800000 → every increment happened under both locks, no deadlock even though half the callers pass (r2, r1).
+		-Retries stay near 0: after sorting, all threads use one order, the timeout path is only a safety net.
+
 C. Deadlock Detection
 
 	Periodically check for threads waiting on each other using ThreadMXBean
 
+	Deadlock Detector Service:-
+		-DeadLockDemo just hangs forever, nobody notices until requests time out.
+		-Background thread calls ThreadMXBean.findDeadlockedThreads() every N seconds.
+			Covers synchronized monitors AND ownable synchronizers (ReentrantLock, ReentrantReadWriteLock).
+			Returns null when there is no deadlock → the normal tick is cheap.
+		-Only when a cycle is found: getThreadInfo(ids, lockedMonitors, lockedSynchronizers, maxDepth) → stacks + who holds what.
+		-Bounded cost: interval has a lower limit, stack depth is capped, a cycle already reported is not dumped again.
+		 The victim Thread is found by walking the root ThreadGroup (Thread.getAllStackTraces() would capture a stack
+		 of every live thread just to find one by id).
+		-Metric: deadlocks_detected_total counter + deadlocked_threads gauge (Lock-free Metrics Registry above).
+		-Optional recovery: interrupt a victim (e.g. the youngest thread in the cycle).
+			Works only if the victim waits in lockInterruptibly()/tryLock(timeout) → it gets InterruptedException and releases its locks.
+			A thread blocked on synchronized can't be interrupted out of it → for DeadLockDemo the detector can only report.
+		Example:-
+
+		import java.lang.management.*;
+		import java.util.*;
+		import java.util.concurrent.*;
+		import java.util.concurrent.locks.ReentrantLock;
+		import java.util.function.Function;
+
+		final class DeadlockDetector implements AutoCloseable {
+
+		    private static final long MIN_INTERVAL_MS = 1_000;
+		    private static final int MAX_STACK_DEPTH = 16;
+
+		    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		    private final ScheduledExecutorService scheduler;
+		    private final Function<ThreadInfo[], Long> victimChooser;   // null → report only
+		    private final StripedCounter detected = MetricsRegistry.GLOBAL.counter("deadlocks_detected_total");
+		    private final Set<Set<Long>> reported = ConcurrentHashMap.newKeySet();
+		    private volatile int deadlockedThreads;
+
+		    DeadlockDetector(long intervalMs, Function<ThreadInfo[], Long> victimChooser) {
+		        this.victimChooser = victimChooser;
+		        MetricsRegistry.GLOBAL.gauge("deadlocked_threads", this, d -> d.deadlockedThreads);
+		        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+		            Thread t = new Thread(r, "deadlock-detector");
+		            t.setDaemon(true);
+		            return t;
+		        });
+		        long interval = Math.max(intervalMs, MIN_INTERVAL_MS);
+		        scheduler.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+		    }
+
+		    // Picks the thread with the highest id (most recently created) in the cycle
+		    static Long youngestThread(ThreadInfo[] cycle) {
+		        return Arrays.stream(cycle).mapToLong(ThreadInfo::getThreadId).max().getAsLong();
+		    }
+
+		    void check() {
+		        long[] ids = threads.findDeadlockedThreads();
+		        deadlockedThreads = ids == null ? 0 : ids.length;
+		        if (ids == null) {
+		            reported.clear();
+		            return;
+		        }
+		        Set<Long> key = new TreeSet<>();
+		        for (long id : ids) key.add(id);
+		        if (!reported.add(key)) return;       // same cycle as last time → no new dump
+
+		        detected.increment();
+		        ThreadInfo[] infos = threads.getThreadInfo(ids, true, true, MAX_STACK_DEPTH);
+		        System.err.println(report(infos));
+
+		        if (victimChooser != null) {
+		            Thread victim = findThread(victimChooser.apply(infos));
+		            if (victim != null) {
+		                System.err.println("Interrupting deadlock victim " + victim.getName());
+		                victim.interrupt();
+		            }
+		        }
+		    }
+
+		    // Thread references only, no stacks: enumerate the root group (grow the array if threads were started meanwhile)
+		    private static Thread findThread(long id) {
+		        ThreadGroup root = Thread.currentThread().getThreadGroup();
+		        while (root.getParent() != null) root = root.getParent();
+		        Thread[] all = new Thread[root.activeCount() + 16];
+		        int n;
+		        while ((n = root.enumerate(all, true)) == all.length) all = new Thread[all.length * 2];
+		        for (int i = 0; i < n; i++) {
+		            if (all[i].getId() == id) return all[i];
+		        }
+		        return null;                          // ended in the meantime
+		    }
+
+		    static String report(ThreadInfo[] infos) {
+		        StringBuilder sb = new StringBuilder("DEADLOCK detected, ").append(infos.length).append(" threads:\n");
+		        for (ThreadInfo info : infos) {
+		            if (info == null) continue;       // thread ended in the meantime
+		            sb.append("  \"").append(info.getThreadName()).append("\" id=").append(info.getThreadId())
+		              .append(' ').append(info.getThreadState())
+		              .append("\n    waiting for ").append(info.getLockName())
+		              .append(" held by \"").append(info.getLockOwnerName()).append("\" id=").append(info.getLockOwnerId())
+		              .append('\n');
+		            for (MonitorInfo m : info.getLockedMonitors()) {
+		                sb.append("    holds monitor ").append(m).append(" (locked at ").append(m.getLockedStackFrame()).append(")\n");
+		            }
+		            for (LockInfo l : info.getLockedSynchronizers()) {
+		                sb.append("    holds ").append(l).append('\n');
+		            }
+		            for (StackTraceElement frame : info.getStackTrace()) {
+		                sb.append("      at ").append(frame).append('\n');
+		            }
+		        }
+		        return sb.toString();
+		    }
+
+		    @Override
+		    public void close() {
+		        scheduler.shutdownNow();
+		    }
+		}
+
+		public class DeadlockDetectorDemo {
+		    public static void main(String[] args) throws Exception {
+		        ReentrantLock r1 = new ReentrantLock();
+		        ReentrantLock r2 = new ReentrantLock();
+
+		        try (DeadlockDetector detector = new DeadlockDetector(1_000, DeadlockDetector::youngestThread)) {
+		            Thread t1 = new Thread(() -> lockBoth(r1, r2), "Thread-1");
+		            Thread t2 = new Thread(() -> lockBoth(r2, r1), "Thread-2");
+		            t1.start();
+		            t2.start();
+		            t1.join();
+		            t2.join();                        // returns because the victim gave up its lock
+		            System.out.print(MetricsRegistry.GLOBAL.scrape());
+		        }
+		    }
+
+		    static void lockBoth(ReentrantLock first, ReentrantLock second) {
+		        try {
+		            first.lockInterruptibly();
+		            try {
+		                Thread.sleep(500);
+		                second.lockInterruptibly();
+		                try {
+		                    System.out.println(Thread.currentThread().getName() + " got both locks");
+		                } finally {
+		                    second.unlock();
+		                }
+		            } finally {
+		                first.unlock();
+		            }
+		        } catch (InterruptedException e) {
+		            System.out.println(Thread.currentThread().getName() + " interrupted, released its lock");
+		        }
+		    }
+		}
+
+		Output (trimmed):-
+			DEADLOCK detected, 2 threads:
+			  "Thread-1" id=13 WAITING
+			    waiting for java.util.concurrent.locks.ReentrantLock$NonfairSync@6d50f2b4 held by "Thread-2" id=14
+			    holds java.util.concurrent.locks.ReentrantLock$NonfairSync@5c2030b2
+			      at java.util.concurrent.locks.ReentrantLock.lockInterruptibly(ReentrantLock.java:372)
+			      at DeadlockDetectorDemo.lockBoth(DeadlockDetectorDemo.java:374)
+			  "Thread-2" id=14 WAITING
+			    waiting for java.util.concurrent.locks.ReentrantLock$NonfairSync@5c2030b2 held by "Thread-1" id=13
+			    holds java.util.concurrent.locks.ReentrantLock$NonfairSync@6d50f2b4
+			Interrupting deadlock victim Thread-2
+			Thread-1 got both locks
+			Thread-2 interrupted, released its lock
+
+
 D. Use Thread Safe Collections/DataStructures
 
 Callable Interface:-
@@ -2005,6 +4850,450 @@ Callable Interface:-
 				executor.shutdown();
 			}
 		}
+
+	Work-Stealing Mode for Large Batches (ForkJoinPool):-
+		-newFixedThreadPool(2) → ONE shared LinkedBlockingQueue, every submit/take goes through its lock.
+		 Fine for 10 tasks, a bottleneck for 100K tiny tasks (plus one Future object per task).
+		-ForkJoinPool: every worker has its own deque.
+			A worker pushes/pops its own tasks from one end (no contention), idle workers steal from the other end.
+		-Recursive splitting: the batch is one task over the index range [0, n).
+			Range bigger than threshold → split in two, fork() one half, compute() the other.
+			Small range → run the Callables directly, results go into a plain array (no Future per task).
+		-Adaptive sizing: parallelism = availableProcessors(), threshold = n / (parallelism * 8) → ~8 chunks per core,
+		 enough to rebalance when some chunks are slower, few enough to keep splitting overhead low.
+		-Keep blocking tasks (Thread.sleep, I/O) on the fixed pool: a blocked ForkJoin worker can't steal or run anything.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+
+		final class BatchExecutor {
+
+		    enum Mode { FIXED_POOL, WORK_STEALING }
+
+		    private final Mode mode;
+		    private final ExecutorService fixed;
+		    private final ForkJoinPool forkJoin;
+
+		    // Same number of threads in both modes → only the queueing strategy differs
+		    BatchExecutor(Mode mode, int parallelism) {
+		        this.mode = mode;
+		        this.fixed = mode == Mode.FIXED_POOL ? Executors.newFixedThreadPool(parallelism) : null;
+		        this.forkJoin = mode == Mode.WORK_STEALING ? new ForkJoinPool(parallelism) : null;
+		    }
+
+		    // Results in submission order
+		    <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws Exception {
+		        if (mode == Mode.FIXED_POOL) {
+		            List<Future<T>> futures = new ArrayList<>(tasks.size());
+		            for (Callable<T> task : tasks) futures.add(fixed.submit(task));
+		            List<T> results = new ArrayList<>(tasks.size());
+		            for (Future<T> f : futures) results.add(f.get());
+		            return results;
+		        }
+		        Object[] results = new Object[tasks.size()];
+		        int threshold = Math.max(1, tasks.size() / (forkJoin.getParallelism() * 8));
+		        forkJoin.invoke(new RangeTask<>(tasks, results, 0, tasks.size(), threshold));
+		        @SuppressWarnings("unchecked")
+		        List<T> list = (List<T>) Arrays.asList(results);
+		        return list;
+		    }
+
+		    void shutdown() {
+		        if (fixed != null) fixed.shutdown();
+		        if (forkJoin != null) forkJoin.shutdown();
+		    }
+
+		    private static final class RangeTask<T> extends RecursiveAction {
+		        private final List<? extends Callable<T>> tasks;
+		        private final Object[] results;
+		        private final int from, to, threshold;
+
+		        RangeTask(List<? extends Callable<T>> tasks, Object[] results, int from, int to, int threshold) {
+		            this.tasks = tasks;
+		            this.results = results;
+		            this.from = from;
+		            this.to = to;
+		            this.threshold = threshold;
+		        }
+
+		        @Override
+		        protected void compute() {
+		            if (to - from <= threshold) {
+		                for (int i = from; i < to; i++) {
+		                    try {
+		                        results[i] = tasks.get(i).call();
+		                    } catch (Exception e) {
+		                        throw new CompletionException(e);
+		                    }
+		                }
+		                return;
+		            }
+		            int mid = (from + to) >>> 1;
+		            RangeTask<T> left = new RangeTask<>(tasks, results, from, mid, threshold);
+		            left.fork();                                                      // may be stolen by an idle worker
+		            new RangeTask<>(tasks, results, mid, to, threshold).compute();   // keep working on the other half
+		            left.join();
+		        }
+		    }
+		}
+
+		public class CallableBatchBenchmark {
+
+		    // Small CPU task; latency = time from batch start until this task finished
+		    static List<Callable<Integer>> tasks(int n, long[] finishedAt) {
+		        List<Callable<Integer>> list = new ArrayList<>(n);
+		        for (int i = 0; i < n; i++) {
+		            int taskId = i;
+		            list.add(() -> {
+		                int sum = 0;
+		                for (int j = 1; j <= 200; j++) sum += j * taskId;
+		                finishedAt[taskId] = System.nanoTime();
+		                return sum;
+		            });
+		        }
+		        return list;
+		    }
+
+		    static void run(BatchExecutor.Mode mode, int parallelism, int n) throws Exception {
+		        BatchExecutor executor = new BatchExecutor(mode, parallelism);
+		        for (int warmup = 0; warmup < 5; warmup++) executor.invokeAll(tasks(n, new long[n]));
+
+		        long[] finishedAt = new long[n];
+		        List<Callable<Integer>> batch = tasks(n, finishedAt);
+		        long start = System.nanoTime();
+		        executor.invokeAll(batch);
+		        long totalNs = System.nanoTime() - start;
+		        executor.shutdown();
+
+		        long[] latency = new long[n];
+		        for (int i = 0; i < n; i++) latency[i] = finishedAt[i] - start;
+		        Arrays.sort(latency);
+		        System.out.printf("%-14s x%-3d %,12d tasks/s   p50=%6.2f ms  p99=%6.2f ms  max=%6.2f ms%n", mode, parallelism,
+		                n * 1_000_000_000L / totalNs, latency[n / 2] / 1e6, latency[n * 99 / 100] / 1e6, latency[n - 1] / 1e6);
+		    }
+
+		    public static void main(String[] args) throws Exception {
+		        int parallelism = Runtime.getRuntime().availableProcessors();
+		        for (int threads : new int[] { 2, parallelism }) {
+		            run(BatchExecutor.Mode.FIXED_POOL, threads, 100_000);
+		            run(BatchExecutor.Mode.WORK_STEALING, threads, 100_000);
+		        }
+		    }
+		}
+
+		-Output: throughput + p50/p99/max latency per mode. Latency is measured from batch start, so it includes queueing.
+		-Both modes get the same number of threads (2, then availableProcessors()) → pool size is not what is compared.
+
+		Sample output (JDK 17, 1 CPU, so the 2-thread rows do not run in parallel either):-
+			FIXED_POOL     x2      1,667,611 tasks/s   p50= 30.53 ms  p99= 59.15 ms  max= 59.45 ms
+			WORK_STEALING  x2      5,096,048 tasks/s   p50= 10.36 ms  p99= 19.35 ms  max= 19.53 ms
+			FIXED_POOL     x1      1,389,519 tasks/s   p50= 35.31 ms  p99= 71.57 ms  max= 71.88 ms
+			WORK_STEALING  x1      4,830,758 tasks/s   p50= 10.49 ms  p99= 20.44 ms  max= 20.63 ms
+		-Same thread count, ~3x gap → the fixed pool's cost here is the shared queue + 100K Future objects, not the work itself.
+		 Re-run on a multi-core machine before sizing a production pool: contention on the shared queue grows with threads.
+
+	Completion-Order Result Streaming:-
+		-futures.get(i).get() in submission order → if task 1 is slow, results of tasks 2..10 (already done) wait behind it.
+		-ResultStream hands out (taskId, result) in the order tasks FINISH.
+		-Bounded buffer: submit() takes a permit from a Semaphore, the consumer gives it back when it takes a result.
+			At most `capacity` tasks are running or waiting to be consumed → a fast submitter can't flood memory.
+		-Early cancellation: after N results, cancelRemaining() cancels every unfinished Future (cancel(true) interrupts running ones).
+		-Failed tasks are delivered as results with an error, they don't stop the stream.
+		-Contract: the submitter ALWAYS calls complete() (in a finally), otherwise next() waits forever for END.
+		 submit() rejected by the executor completes the stream itself before rethrowing → the consumer gets the results
+		 of the tasks already accepted, then null. complete() is idempotent.
+		-Same idea as ExecutorCompletionService, plus backpressure (its queue must be unbounded) and cancellation.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+
+		final class ResultStream<T> implements AutoCloseable {
+
+		    static final class Result<T> {
+		        final int taskId;
+		        final T value;
+		        final Throwable error;
+
+		        Result(int taskId, T value, Throwable error) {
+		            this.taskId = taskId;
+		            this.value = value;
+		            this.error = error;
+		        }
+		    }
+
+		    private static final Result<Object> END = new Result<>(-1, null, null);
+
+		    private final ExecutorService executor;
+		    private final Semaphore permits;
+		    private final BlockingQueue<Result<T>> completed = new LinkedBlockingQueue<>();
+		    private final Map<Integer, Future<?>> running = new ConcurrentHashMap<>();
+		    private volatile boolean cancelled;
+		    private int submitted;                   // submitter thread only
+		    private volatile int submittedTotal = -1;
+		    private int taken;                       // consumer thread only
+		    private boolean endSeen;
+
+		    ResultStream(ExecutorService executor, int capacity) {
+		        this.executor = executor;
+		        this.permits = new Semaphore(capacity);
+		    }
+
+		    // Blocks while `capacity` results are in flight or unconsumed; false once the stream is cancelled
+		    boolean submit(int taskId, Callable<T> task) throws InterruptedException {
+		        permits.acquire();
+		        if (cancelled) {
+		            permits.release();
+		            return false;
+		        }
+		        // put() before execute(): a fast task can't remove its entry before it was added
+		        FutureTask<Void> future = new FutureTask<>(() -> {
+		            try {
+		                completed.add(new Result<>(taskId, task.call(), null));
+		            } catch (Throwable t) {
+		                completed.add(new Result<>(taskId, null, t));
+		            } finally {
+		                running.remove(taskId);
+		            }
+		        }, null);
+		        running.put(taskId, future);
+		        try {
+		            executor.execute(future);
+		        } catch (RejectedExecutionException e) {
+		            running.remove(taskId);
+		            permits.release();
+		            complete();                              // nothing more will come → let the consumer finish
+		            throw e;
+		        }
+		        submitted++;
+		        return true;
+		    }
+
+		    // Submitter is done (or failed); must always be called, extra calls are ignored
+		    @SuppressWarnings("unchecked")
+		    void complete() {
+		        if (submittedTotal >= 0) return;
+		        submittedTotal = submitted;
+		        completed.add((Result<T>) END);
+		    }
+
+		    // Next finished result, or null when everything was consumed or the stream was cancelled
+		    Result<T> next() throws InterruptedException {
+		        while (true) {
+		            if (cancelled || (endSeen && taken == submittedTotal)) return null;
+		            Result<T> r = completed.take();
+		            if (cancelled) return null;              // woken by cancelRemaining() or a cancelled task's error
+		            if (r == END) {
+		                endSeen = true;
+		                continue;
+		            }
+		            taken++;
+		            permits.release();
+		            return r;
+		        }
+		    }
+
+		    @SuppressWarnings("unchecked")
+		    synchronized void cancelRemaining() {
+		        if (cancelled) return;
+		        cancelled = true;
+		        running.values().forEach(f -> f.cancel(true));
+		        permits.release(Integer.MAX_VALUE / 2);    // wake a blocked submitter
+		        completed.add((Result<T>) END);            // wake a consumer blocked in next() → it sees cancelled, returns null
+		    }
+
+		    @Override
+		    public void close() {
+		        cancelRemaining();
+		    }
+		}
+
+		public class CallableStreamDemo {
+		    public static void main(String[] args) throws Exception {
+		        ExecutorService executor = Executors.newFixedThreadPool(4);
+		        int firstN = 5;
+
+		        try (ResultStream<Integer> stream = new ResultStream<>(executor, 4)) {
+		            Thread submitter = new Thread(() -> {
+		                try {
+		                    for (int i = 1; i <= 10; i++) {
+		                        int taskId = i;
+		                        boolean accepted = stream.submit(taskId, () -> {
+		                            Thread.sleep(taskId == 1 ? 2000 : 100L * (taskId % 4 + 1));   // task 1 is slow
+		                            return taskId * 15;
+		                        });
+		                        if (!accepted) break;
+		                    }
+		                } catch (InterruptedException e) {
+		                    Thread.currentThread().interrupt();
+		                } finally {
+		                    stream.complete();               // whatever happened above, the consumer must see END
+		                }
+		            });
+		            submitter.start();
+
+		            ResultStream.Result<Integer> r;
+		            int received = 0;
+		            while ((r = stream.next()) != null) {
+		                System.out.println("Result of Task " + r.taskId + " = " + r.value);   // completion order, task 1 doesn't block
+		                if (++received == firstN) {
+		                    stream.cancelRemaining();
+		                    System.out.println("Got " + firstN + " results, cancelled the rest");
+		                }
+		            }
+		            submitter.join();
+		        }
+		        executor.shutdown();
+		    }
+		}
+
+	Executor Instrumentation (queue depth, wait time, run time):-
+		-A slow task and a task that waited 2 s in the queue look the same to the caller → pool sizing is guesswork.
+		-InstrumentedExecutor decorates a ThreadPoolExecutor, every task is wrapped at execute() with its enqueue time:
+			executor_queue_wait_seconds{pool=...} → from execute() until a worker starts it
+			executor_run_seconds{pool=...}        → task body only
+			executor_queue_depth{pool=...}        → queue size sampled on every execute() (histogram, p99 shows bursts)
+			executor_rejected_total{pool=...}     → RejectedExecutionException count
+			executor_active_threads{pool=...}     → gauge, getActiveCount()
+		-Every pool (plain or @Async) exports the same metric names and shapes, registered by one helper (registerGauges).
+		-Reading the numbers: high queue wait + low run time → too few threads; high run time → the task itself (or what it calls) is slow.
+		-Periodic summary: one line per pool every N seconds on a daemon thread, on top of the registry scrape.
+		-Implemented as AbstractExecutorService → submit()/invokeAll() also go through execute(), CallableMultiDemo code stays the same.
+		Example:-
+
+		import java.util.List;
+		import java.util.concurrent.*;
+
+		final class InstrumentedExecutor extends AbstractExecutorService {
+
+		    private final String pool;
+		    private final ThreadPoolExecutor delegate;
+		    private final Timer queueWait;
+		    private final Timer runTime;
+		    private final Histogram queueDepth = new Histogram();
+		    private final StripedCounter rejected;
+
+		    InstrumentedExecutor(String pool, ThreadPoolExecutor delegate) {
+		        this.pool = pool;
+		        this.delegate = delegate;
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        queueWait = m.timer("executor_queue_wait_seconds", "pool", pool);
+		        runTime = m.timer("executor_run_seconds", "pool", pool);
+		        rejected = m.counter("executor_rejected_total", "pool", pool);
+		        registerGauges(pool, delegate, queueDepth);
+		    }
+
+		    // One name and one shape for every pool: depth sampled at each enqueue, exported as its p99
+		    static void registerGauges(String pool, ThreadPoolExecutor executor, Histogram queueDepth) {
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        m.gauge("executor_active_threads", executor::getActiveCount, "pool", pool);
+		        m.gauge("executor_queue_depth", () -> queueDepth.percentiles(0.99)[0], "pool", pool, "quantile", "0.99");
+		    }
+
+		    static InstrumentedExecutor fixed(String pool, int threads) {
+		        return new InstrumentedExecutor(pool, new ThreadPoolExecutor(threads, threads,
+		                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()));
+		    }
+
+		    // Same wrapping is reused for Spring's TaskDecorator below
+		    static Runnable timed(Runnable task, Timer queueWait, Timer runTime) {
+		        long enqueuedAt = System.nanoTime();
+		        return () -> {
+		            long startedAt = System.nanoTime();
+		            queueWait.histogram.record(startedAt - enqueuedAt);
+		            try {
+		                task.run();
+		            } finally {
+		                runTime.stop(startedAt);
+		            }
+		        };
+		    }
+
+		    @Override
+		    public void execute(Runnable task) {
+		        queueDepth.record(delegate.getQueue().size());
+		        try {
+		            delegate.execute(timed(task, queueWait, runTime));
+		        } catch (RejectedExecutionException e) {
+		            rejected.increment();
+		            throw e;
+		        }
+		    }
+
+		    String summary() {
+		        long[] wait = queueWait.histogram.percentiles(0.5, 0.99);
+		        long[] run = runTime.histogram.percentiles(0.5, 0.99);
+		        return String.format("[%s] active=%d/%d queue=%d (p99 %d) wait p50=%.1fms p99=%.1fms run p50=%.1fms p99=%.1fms done=%d rejected=%d",
+		                pool, delegate.getActiveCount(), delegate.getMaximumPoolSize(), delegate.getQueue().size(),
+		                queueDepth.percentiles(0.99)[0], wait[0] / 1e6, wait[1] / 1e6, run[0] / 1e6, run[1] / 1e6,
+		                delegate.getCompletedTaskCount(), rejected.sum());
+		    }
+
+		    ScheduledExecutorService printSummaryEvery(long seconds) {
+		        ScheduledExecutorService printer = Executors.newSingleThreadScheduledExecutor(r -> {
+		            Thread t = new Thread(r, "executor-summary-" + pool);
+		            t.setDaemon(true);
+		            return t;
+		        });
+		        printer.scheduleAtFixedRate(() -> System.out.println(summary()), seconds, seconds, TimeUnit.SECONDS);
+		        return printer;
+		    }
+
+		    @Override public void shutdown() { delegate.shutdown(); }
+		    @Override public List<Runnable> shutdownNow() { return delegate.shutdownNow(); }
+		    @Override public boolean isShutdown() { return delegate.isShutdown(); }
+		    @Override public boolean isTerminated() { return delegate.isTerminated(); }
+		    @Override public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		        return delegate.awaitTermination(timeout, unit);
+		    }
+		}
+
+		-CallableMultiDemo: only the pool creation changes.
+
+		InstrumentedExecutor executor = InstrumentedExecutor.fixed("callable-demo", 2);   // was Executors.newFixedThreadPool(2)
+		executor.printSummaryEvery(1);
+		// ... submit the 10 tasks and read the futures as before ...
+		executor.shutdown();
+		System.out.println(executor.summary());
+		// [callable-demo] active=0/2 queue=0 (p99 7) wait p50=989.9ms p99=1979.7ms run p50=494.9ms p99=503.3ms done=10 rejected=0
+
+		-@Async (ThreadPoolTaskExecutor): Spring wraps every task with the TaskDecorator at enqueue time → the decorator samples
+		 the queue depth and adds the timers, registerGauges() reads getThreadPoolExecutor() → same metrics as InstrumentedExecutor.
+
+		@Configuration
+		@EnableAsync
+		public class AsyncConfig {
+
+		    @Bean(name = "taskExecutor")                 // default executor used by @Async
+		    public ThreadPoolTaskExecutor taskExecutor() {
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        Timer queueWait = m.timer("executor_queue_wait_seconds", "pool", "async");
+		        Timer runTime = m.timer("executor_run_seconds", "pool", "async");
+		        StripedCounter rejected = m.counter("executor_rejected_total", "pool", "async");
+		        Histogram queueDepth = new Histogram();
+
+		        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		        executor.setCorePoolSize(8);
+		        executor.setMaxPoolSize(8);
+		        executor.setQueueCapacity(500);
+		        executor.setThreadNamePrefix("async-");
+		        executor.setTaskDecorator(task -> {                 // runs inside execute(), before the task is queued
+		            queueDepth.record(executor.getThreadPoolExecutor().getQueue().size());
+		            return InstrumentedExecutor.timed(task, queueWait, runTime);
+		        });
+		        executor.setRejectedExecutionHandler((task, pool) -> {
+		            rejected.increment();
+		            throw new RejectedExecutionException("async pool full");
+		        });
+		        executor.initialize();
+
+		        InstrumentedExecutor.registerGauges("async", executor.getThreadPoolExecutor(), queueDepth);
+		        return executor;
+		    }
+		}
+
+
 		
 =======================================================================================================================================
 
@@ -2410,6 +5699,336 @@ Primary VS Qaulifier
 				}
 			}
 			
+	@Async on Virtual Threads (Java 21+) for sendEmail:-
+		-sendEmail() spends 3 s in Thread.sleep (stands for SMTP I/O) → each pending email holds one platform thread of the pool.
+		 A burst of /users/{user}/notify fills the pool, then the queue, then requests get rejected.
+		-Virtual thread: blocking (sleep, socket read, lock wait) unmounts it from its carrier thread → costs ~1 KB heap, not 1 MB stack.
+		 100K waiting emails = 100K virtual threads on a handful of carrier threads.
+		-Unlimited concurrency is not what the SMTP server wants → a Semaphore caps how many sends run at the same time.
+		 The permit is taken INSIDE the virtual thread: waiting for it is cheap, the caller of sendEmail() never blocks.
+		 Interrupted while waiting → the task is not run: interrupt flag restored, RejectedExecutionException thrown,
+		 and a Future-returning @Async method gets its future cancelled instead of hanging forever.
+		-Pinning: a virtual thread that blocks inside synchronized (JDK 21-23) or a native frame can't unmount → it blocks its carrier.
+			Diagnose: JFR event jdk.VirtualThreadPinned (monitor below), or -Djdk.tracePinnedThreads=full on JDK 21-23.
+			Fix: replace synchronized around blocking calls with ReentrantLock.
+		-Spring Boot 3.2+: spring.threads.virtual.enabled=true switches @Async to virtual threads with one property,
+		 spring.task.execution.simple.concurrency-limit=200 gives the cap. The explicit bean below is the same idea, visible in code.
+		Example:-
+
+		import java.time.Duration;
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.LongAdder;
+		import jdk.jfr.consumer.RecordedEvent;
+		import jdk.jfr.consumer.RecordedStackTrace;
+		import jdk.jfr.consumer.RecordingStream;
+		import org.springframework.beans.factory.annotation.Value;
+		import org.springframework.context.annotation.*;
+		import org.springframework.core.task.AsyncTaskExecutor;
+		import org.springframework.core.task.support.TaskExecutorAdapter;
+		import org.springframework.scheduling.annotation.EnableAsync;
+
+		final class BoundedVirtualThreadExecutor implements Executor {
+
+		    private final ThreadFactory factory;
+		    private final Semaphore limit;
+		    private final int maxConcurrent;
+
+		    BoundedVirtualThreadExecutor(String namePrefix, int maxConcurrent) {
+		        this.factory = Thread.ofVirtual().name(namePrefix, 0).factory();
+		        this.limit = new Semaphore(maxConcurrent);
+		        this.maxConcurrent = maxConcurrent;
+		    }
+
+		    @Override
+		    public void execute(Runnable task) {
+		        factory.newThread(() -> {
+		            try {
+		                limit.acquire();               // parks the virtual thread, not a platform thread
+		            } catch (InterruptedException e) {
+		                Thread.currentThread().interrupt();
+		                if (task instanceof Future<?> f) f.cancel(false);   // @Async Future/CompletableFuture callers see it
+		                throw new RejectedExecutionException("interrupted while waiting for a permit", e);
+		            }
+		            try {
+		                task.run();
+		            } finally {
+		                limit.release();
+		            }
+		        }).start();
+		    }
+
+		    int running() { return maxConcurrent - limit.availablePermits(); }
+		    int waiting() { return limit.getQueueLength(); }
+		}
+
+		// Streams JFR pinning events in-process: count + log the stack of long pins
+		final class PinnedThreadMonitor implements AutoCloseable {
+
+		    final LongAdder pinnedEvents = new LongAdder();
+		    private final RecordingStream stream = new RecordingStream();
+
+		    PinnedThreadMonitor(Duration threshold) {
+		        stream.enable("jdk.VirtualThreadPinned").withThreshold(threshold).withStackTrace();
+		        stream.onEvent("jdk.VirtualThreadPinned", event -> {
+		            pinnedEvents.increment();
+		            System.err.println("Virtual thread pinned for " + event.getDuration().toMillis() + " ms at "
+		                    + topFrame(event));
+		        });
+		        stream.startAsync();
+		    }
+
+		    // stack can be missing or empty (truncated, or recorded without withStackTrace()) → never throw from the handler
+		    private static Object topFrame(RecordedEvent event) {
+		        RecordedStackTrace stack = event.getStackTrace();
+		        return stack == null || stack.getFrames().isEmpty() ? "?" : stack.getFrames().get(0);
+		    }
+
+		    @Override
+		    public void close() {
+		        stream.close();
+		    }
+		}
+
+		@Configuration
+		@EnableAsync
+		public class AsyncConfig {
+
+		    @Bean
+		    public BoundedVirtualThreadExecutor notificationExecutor(
+		            @Value("${notifications.max-concurrent:200}") int maxConcurrent) {
+		        return new BoundedVirtualThreadExecutor("notify-", maxConcurrent);
+		    }
+
+		    @Bean(name = "taskExecutor")                 // default executor for @Async
+		    public AsyncTaskExecutor taskExecutor(BoundedVirtualThreadExecutor notificationExecutor) {
+		        return new TaskExecutorAdapter(notificationExecutor);
+		    }
+
+		    @Bean(destroyMethod = "close")
+		    public PinnedThreadMonitor pinnedThreadMonitor() {
+		        return new PinnedThreadMonitor(Duration.ofMillis(20));
+		    }
+		}
+
+		-NotificationService stays @Async, only avoid synchronized around the blocking part:
+
+		@Service
+		public class NotificationService {
+
+		    @Async
+		    public void sendEmail(String user) {
+		        System.out.println("Sending email to " + user + " - " + Thread.currentThread());   // VirtualThread[#52,notify-7]/runnable@ForkJoinPool-1-worker-3
+		        try {
+		            Thread.sleep(3000);                  // unmounts, carrier thread is free for other emails
+		        } catch (InterruptedException e) {
+		            Thread.currentThread().interrupt();
+		        }
+		        System.out.println("Email sent to " + user);
+		    }
+		}
+
+		-Load check without Spring: 100K sends with a cap of 1000 → about 100 rounds of 3 s sleeps would be 300 s,
+		 so use a shorter sleep for the test and watch the JVM thread count stay at the number of carriers.
+
+		public class VirtualNotifyLoadTest {
+		    public static void main(String[] args) throws Exception {
+		        BoundedVirtualThreadExecutor executor = new BoundedVirtualThreadExecutor("notify-", 1_000);
+		        CountDownLatch done = new CountDownLatch(100_000);
+		        long start = System.nanoTime();
+		        for (int i = 0; i < 100_000; i++) {
+		            executor.execute(() -> {
+		                try {
+		                    Thread.sleep(50);                                      // fake SMTP round trip
+		                } catch (InterruptedException e) {
+		                    Thread.currentThread().interrupt();
+		                }
+		                done.countDown();
+		            });
+		        }
+		        System.out.println("queued, running=" + executor.running() + " waiting=" + executor.waiting()
+		                + " platform threads=" + java.lang.management.ManagementFactory.getThreadMXBean().getThreadCount());
+		        done.await();
+		        System.out.println("100K notifications in " + (System.nanoTime() - start) / 1_000_000 + " ms");   // ~100 rounds x 50 ms
+		    }
+		}
+
+	Coalescing Batch Sender for Notifications:-
+		-One sendEmail(user) per request → one SMTP session per email, and the same user notified 5 times in a second gets 5 emails.
+		-Pipeline: controller → bounded queue → one flusher thread → transport.sendBatch(recipients).
+			Multi-producer (request threads), single-consumer (flusher) → ArrayBlockingQueue, offer() never blocks a request thread.
+			Flush when N recipients are collected OR T ms passed since the first one, whichever comes first.
+			De-duplication: a pending set; a user already waiting for the next flush is not queued again (coalesced).
+			Backpressure: queue full → offer() returns false → controller answers 429 Too Many Requests, client retries later.
+		-Latency cost: at most T ms extra per email, traded for N times fewer transport calls.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.LongAdder;
+		import java.util.concurrent.locks.*;
+
+		interface EmailTransport {
+		    void sendBatch(List<String> recipients);
+		}
+
+		final class NotificationBatcher implements AutoCloseable {
+
+		    enum Outcome { QUEUED, COALESCED, REJECTED }
+
+		    private final BlockingQueue<String> queue;
+		    private final Set<String> pending = ConcurrentHashMap.newKeySet();
+		    private final EmailTransport transport;
+		    private final int maxBatch;
+		    private final long maxWaitNanos;
+		    private final Thread flusher;
+		    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+		    private volatile boolean running = true;
+
+		    NotificationBatcher(EmailTransport transport, int capacity, int maxBatch, long maxWaitMs) {
+		        this.queue = new ArrayBlockingQueue<>(capacity);
+		        this.transport = transport;
+		        this.maxBatch = maxBatch;
+		        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMs);
+		        this.flusher = new Thread(this::flushLoop, "notification-flusher");
+		        this.flusher.setDaemon(true);
+		        this.flusher.start();
+		    }
+
+		    Outcome notify(String user) {
+		        closeLock.readLock().lock();                 // close() can't flip running between the check and the offer
+		        try {
+		            if (!running) return Outcome.REJECTED;   // flusher is draining or gone → an accepted item would be lost
+		            if (!pending.add(user)) return Outcome.COALESCED;   // already waiting for the next flush
+		            if (queue.offer(user)) return Outcome.QUEUED;
+		            pending.remove(user);
+		            return Outcome.REJECTED;
+		        } finally {
+		            closeLock.readLock().unlock();
+		        }
+		    }
+
+		    private void flushLoop() {
+		        List<String> batch = new ArrayList<>(maxBatch);
+		        while (running || !queue.isEmpty()) {
+		            try {
+		                String first = queue.poll(100, TimeUnit.MILLISECONDS);
+		                if (first == null) continue;
+		                batch.add(first);
+		                long deadline = System.nanoTime() + maxWaitNanos;
+		                while (batch.size() < maxBatch) {
+		                    queue.drainTo(batch, maxBatch - batch.size());   // take what is already there without waiting
+		                    long left = deadline - System.nanoTime();
+		                    if (batch.size() >= maxBatch || left <= 0) break;
+		                    String next = queue.poll(left, TimeUnit.NANOSECONDS);
+		                    if (next == null) break;
+		                    batch.add(next);
+		                }
+		                pending.removeAll(batch);            // new notifications for these users go to the next batch
+		                transport.sendBatch(new ArrayList<>(batch));
+		            } catch (InterruptedException e) {
+		                Thread.currentThread().interrupt();
+		                return;
+		            } catch (RuntimeException e) {
+		                e.printStackTrace();                 // transport failure must not kill the flusher
+		            } finally {
+		                batch.clear();
+		            }
+		        }
+		    }
+
+		    @Override
+		    public void close() throws InterruptedException {
+		        closeLock.writeLock().lock();                // waits for notify() calls already past the running check
+		        try {
+		            running = false;                         // flusher drains what is left, then exits
+		        } finally {
+		            closeLock.writeLock().unlock();
+		        }
+		        flusher.join();
+		    }
+		}
+
+		// Local stub SMTP sink: counts transport calls instead of sending
+		class StubSmtpSink implements EmailTransport {
+		    final LongAdder calls = new LongAdder();
+		    final LongAdder recipients = new LongAdder();
+
+		    @Override
+		    public void sendBatch(List<String> batch) {
+		        calls.increment();
+		        recipients.add(batch.size());
+		        try {
+		            Thread.sleep(20);                        // one SMTP session
+		        } catch (InterruptedException e) {
+		            Thread.currentThread().interrupt();
+		        }
+		    }
+		}
+
+		public class NotificationBatcherDemo {
+		    public static void main(String[] args) throws Exception {
+		        StubSmtpSink sink = new StubSmtpSink();
+		        Map<NotificationBatcher.Outcome, LongAdder> outcomes = new ConcurrentHashMap<>();
+		        int requests = 20_000;
+
+		        try (NotificationBatcher batcher = new NotificationBatcher(sink, 5_000, 100, 50)) {
+		            ExecutorService clients = Executors.newFixedThreadPool(8);
+		            for (int i = 0; i < requests; i++) {
+		                String user = "user" + ThreadLocalRandom.current().nextInt(5_000);   // repeats on purpose
+		                clients.execute(() -> outcomes.computeIfAbsent(batcher.notify(user), k -> new LongAdder()).increment());
+		            }
+		            clients.shutdown();
+		            clients.awaitTermination(1, TimeUnit.MINUTES);
+		        }
+
+		        System.out.println("Requests            : " + requests + " (one sendEmail call each before)");
+		        System.out.println("Outcomes            : " + outcomes);
+		        System.out.println("Transport calls     : " + sink.calls.sum());
+		        System.out.println("Emails sent         : " + sink.recipients.sum());
+		    }
+		}
+
+		Output:-
+			Requests            : 20000 (one sendEmail call each before)
+			Outcomes            : {COALESCED=14386, QUEUED=5614}
+			Transport calls     : 57
+			Emails sent         : 5614
+
+		-Controller: 202 when accepted (queued or merged into a pending one), 429 when the queue is full or shutting down.
+		 The batcher is a singleton bean; destroyMethod = "close" flushes what is queued when the context stops.
+
+		@Configuration
+		public class NotificationBatchConfig {
+
+		    @Bean(destroyMethod = "close")
+		    public NotificationBatcher notificationBatcher(EmailTransport smtpTransport) {
+		        return new NotificationBatcher(smtpTransport, 5_000, 100, 50);
+		    }
+		}
+
+		@RestController
+		@RequestMapping("/users")
+		public class UserController {
+
+		    private final NotificationBatcher notificationBatcher;
+
+		    public UserController(NotificationBatcher notificationBatcher) {
+		        this.notificationBatcher = notificationBatcher;
+		    }
+
+		    @PostMapping("/{user}/notify")
+		    public ResponseEntity<String> notifyUser(@PathVariable String user) {
+		        if (notificationBatcher.notify(user) == NotificationBatcher.Outcome.REJECTED) {
+		            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+		                    .header(HttpHeaders.RETRY_AFTER, "1")
+		                    .body("Too many notifications, retry later");
+		        }
+		        return ResponseEntity.accepted().body("Notification triggered for " + user);
+		    }
+		}
+
+
+			
 🔹 @Scheduled
 
 	-Used to schedule tasks at fixed intervals, delays, or cron expressions.
@@ -2444,6 +6063,715 @@ Primary VS Qaulifier
 				System.out.println("Daily job executed at " + new Date());
 			}
 		}
+
+	Hierarchical Timing Wheel (hundreds of thousands of timers):-
+		-@Scheduled is fine for a few fixed jobs. Per-order reminders = one timer per order → 100K+ timers, most of them cancelled.
+		-ScheduledThreadPoolExecutor keeps timers in a binary heap under one lock → O(log n) schedule and cancel,
+		 and a cancelled task stays in the heap until its time comes, unless setRemoveOnCancelPolicy(true): each task
+		 remembers its heap index → removal is O(log n), but under the same lock as every schedule.
+		-Timing wheel = clock face of buckets. Time advances one tick at a time, a bucket holds the timers due in that tick.
+			schedule → put the timer in bucket (deadline % wheelSize) → O(1).
+			cancel   → unlink the timer from its bucket's doubly linked list → O(1).
+		-Hierarchical: 4 wheels (256 x 64 x 64 x 64 buckets). Far timers sit in an upper wheel, when the lower wheel
+		 wraps around, the due bucket of the upper wheel is moved down (cascade). With 10 ms ticks: 256 ticks = 2.56 s,
+		 then 2.7 min, 2.9 h, 7.7 days, anything later waits in the last bucket and is re-placed.
+		-Threads: schedule()/cancel() from any thread only add to lock-free queues. One worker thread owns the wheels
+		 (no locks on buckets), moves new/cancelled timers every tick, and hands expired tasks to an executor.
+		 A task that throws is caught and logged in the worker → the wheel keeps firing (matters for Runnable::run).
+		-Resolution: a timer fires within one tick after its deadline → pick the tick from the precision you need (10 ms for reminders).
+		-Cron on top: after each run compute the next fire time (Spring's CronExpression.next) and schedule a one-shot timer.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+		import java.util.concurrent.locks.LockSupport;
+
+		final class TimingWheelScheduler implements AutoCloseable {
+
+		    static final class Timeout {
+		        private static final int PENDING = 0, CANCELLED = 1, EXPIRED = 2;
+		        private static final AtomicIntegerFieldUpdater<Timeout> STATE =
+		                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+		        final Runnable task;
+		        final long deadlineTick;
+		        private volatile int state = PENDING;          // field updater: no extra object per timer
+		        private final TimingWheelScheduler owner;
+		        Timeout prev, next;        // bucket links, worker thread only
+		        Bucket bucket;
+
+		        Timeout(TimingWheelScheduler owner, Runnable task, long deadlineTick) {
+		            this.owner = owner;
+		            this.task = task;
+		            this.deadlineTick = deadlineTick;
+		        }
+
+		        // O(1): flag it, the worker unlinks it on its next tick
+		        boolean cancel() {
+		            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) return false;
+		            owner.cancelled.add(this);
+		            return true;
+		        }
+
+		        boolean isCancelled() { return state == CANCELLED; }
+		    }
+
+		    static final class Bucket {
+		        Timeout head, tail;
+
+		        void add(Timeout t) {
+		            t.bucket = this;
+		            t.prev = tail;
+		            t.next = null;
+		            if (tail == null) head = t; else tail.next = t;
+		            tail = t;
+		        }
+
+		        void remove(Timeout t) {
+		            if (t.prev == null) head = t.next; else t.prev.next = t.next;
+		            if (t.next == null) tail = t.prev; else t.next.prev = t.prev;
+		            t.prev = t.next = null;
+		            t.bucket = null;
+		        }
+
+		        Timeout takeAll() {
+		            Timeout all = head;
+		            head = tail = null;
+		            return all;
+		        }
+		    }
+
+		    private static final int[] BITS = { 8, 6, 6, 6 };       // 256, 64, 64, 64 buckets
+		    private static final int[] SHIFT = { 0, 8, 14, 20 };
+
+		    private final long tickNanos;
+		    private final long startNanos = System.nanoTime();
+		    private final Bucket[][] wheels = new Bucket[BITS.length][];
+		    private final Queue<Timeout> added = new ConcurrentLinkedQueue<>();
+		    private final Queue<Timeout> cancelled = new ConcurrentLinkedQueue<>();
+		    private final Executor taskExecutor;
+		    private final Thread worker;
+		    private volatile boolean running = true;
+		    private long currentTick;                                 // worker thread only
+
+		    TimingWheelScheduler(long tick, TimeUnit unit, Executor taskExecutor) {
+		        this.tickNanos = unit.toNanos(tick);
+		        this.taskExecutor = taskExecutor;
+		        for (int level = 0; level < BITS.length; level++) {
+		            wheels[level] = new Bucket[1 << BITS[level]];
+		            for (int i = 0; i < wheels[level].length; i++) wheels[level][i] = new Bucket();
+		        }
+		        worker = new Thread(this::run, "timing-wheel");
+		        worker.setDaemon(true);
+		        worker.start();
+		    }
+
+		    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+		        long deadline = System.nanoTime() - startNanos + unit.toNanos(delay);
+		        Timeout t = new Timeout(this, task, (deadline + tickNanos - 1) / tickNanos);   // round up: never fire early
+		        added.add(t);
+		        return t;
+		    }
+
+		    private void run() {
+		        while (running) {
+		            long tickStart = startNanos + currentTick * tickNanos;
+		            long sleep = tickStart - System.nanoTime();
+		            if (sleep > 0) LockSupport.parkNanos(sleep);
+		            if (System.nanoTime() < tickStart) continue;      // early wakeup
+
+		            for (Timeout t; (t = cancelled.poll()) != null; ) {
+		                if (t.bucket != null) t.bucket.remove(t);
+		            }
+		            for (Timeout t; (t = added.poll()) != null; ) {
+		                if (!t.isCancelled()) place(t);
+		            }
+		            cascade();
+		            expire(wheels[0][(int) (currentTick & (wheels[0].length - 1))].takeAll());
+		            currentTick++;
+		        }
+		    }
+
+		    // Pick the lowest wheel that can hold the timer's distance from now
+		    private void place(Timeout t) {
+		        long deadline = Math.max(t.deadlineTick, currentTick);
+		        long delta = deadline - currentTick;
+		        for (int level = 0; level < BITS.length; level++) {
+		            if (delta < 1L << (SHIFT[level] + BITS[level])) {
+		                int mask = wheels[level].length - 1;
+		                wheels[level][(int) ((deadline >>> SHIFT[level]) & mask)].add(t);
+		                return;
+		            }
+		        }
+		        int last = BITS.length - 1;                           // beyond the top wheel: park in the farthest bucket
+		        int mask = wheels[last].length - 1;
+		        wheels[last][(int) (((currentTick >>> SHIFT[last]) + mask) & mask)].add(t);
+		    }
+
+		    // When a lower wheel wraps, move the due bucket of the wheel above down
+		    private void cascade() {
+		        for (int level = BITS.length - 1; level >= 1; level--) {
+		            if ((currentTick & ((1L << SHIFT[level]) - 1)) != 0) continue;
+		            Bucket due = wheels[level][(int) ((currentTick >>> SHIFT[level]) & (wheels[level].length - 1))];
+		            for (Timeout t = due.takeAll(), next; t != null; t = next) {
+		                next = t.next;
+		                t.prev = t.next = null;
+		                place(t);
+		            }
+		        }
+		    }
+
+		    private void expire(Timeout t) {
+		        for (Timeout next; t != null; t = next) {
+		            next = t.next;
+		            t.prev = t.next = null;
+		            t.bucket = null;
+		            if (t.deadlineTick > currentTick) {               // parked far timer, not due yet
+		                place(t);
+		            } else if (Timeout.STATE.compareAndSet(t, Timeout.PENDING, Timeout.EXPIRED)) {
+		                try {
+		                    taskExecutor.execute(t.task);                // Runnable::run → the task runs right here
+		                } catch (Throwable e) {                         // one bad task must not kill the only worker
+		                    System.err.println("[timing-wheel] timer task failed: " + e);
+		                }
+		            }
+		        }
+		    }
+
+		    @Override
+		    public void close() {
+		        running = false;
+		    }
+		}
+
+		public class TimingWheelBenchmark {
+
+		    // Returns once the worker has applied everything queued before it: a 0 ms timer is placed after all
+		    // earlier adds (FIFO) and after pending cancels → schedule/cancel are timed including the worker's part
+		    static void drain(TimingWheelScheduler wheel) throws InterruptedException {
+		        CountDownLatch done = new CountDownLatch(1);
+		        wheel.schedule(done::countDown, 0, TimeUnit.MILLISECONDS);
+		        done.await();
+		    }
+
+		    public static void main(String[] args) throws Exception {
+		        int n = 1_000_000;
+		        Runnable noop = () -> { };
+		        ThreadLocalRandom r = ThreadLocalRandom.current();
+
+		        // Timing wheel: 1M reminders between 1 min and 1 day, cancel half of them
+		        try (TimingWheelScheduler wheel = new TimingWheelScheduler(10, TimeUnit.MILLISECONDS, Runnable::run)) {
+		            TimingWheelScheduler.Timeout[] timeouts = new TimingWheelScheduler.Timeout[n];
+		            long start = System.nanoTime();
+		            for (int i = 0; i < n; i++) timeouts[i] = wheel.schedule(noop, 60 + r.nextInt(86_400), TimeUnit.SECONDS);
+		            drain(wheel);                                         // + at most one 10 ms tick
+		            long scheduleNs = System.nanoTime() - start;
+		            start = System.nanoTime();
+		            for (int i = 0; i < n; i += 2) timeouts[i].cancel();
+		            drain(wheel);
+		            long cancelNs = System.nanoTime() - start;
+		            System.out.printf("wheel : schedule %5.0f ns/op, cancel %5.0f ns/op%n", (double) scheduleNs / n, (double) cancelNs / (n / 2));
+		        }
+
+		        // ScheduledThreadPoolExecutor with remove-on-cancel (otherwise cancelled tasks stay in the heap)
+		        ScheduledThreadPoolExecutor stpe = new ScheduledThreadPoolExecutor(1);
+		        stpe.setRemoveOnCancelPolicy(true);
+		        ScheduledFuture<?>[] futures = new ScheduledFuture<?>[n];
+		        long start = System.nanoTime();
+		        for (int i = 0; i < n; i++) futures[i] = stpe.schedule(noop, 60 + r.nextInt(86_400), TimeUnit.SECONDS);
+		        long scheduleNs = System.nanoTime() - start;
+		        start = System.nanoTime();
+		        for (int i = 0; i < n; i += 2) futures[i].cancel(false);
+		        long cancelNs = System.nanoTime() - start;
+		        System.out.printf("STPE  : schedule %5.0f ns/op, cancel %5.0f ns/op%n", (double) scheduleNs / n, (double) cancelNs / (n / 2));
+		        stpe.shutdownNow();
+
+		        // Accuracy: 100K timers within 2 s, how late do they fire?
+		        try (TimingWheelScheduler wheel = new TimingWheelScheduler(10, TimeUnit.MILLISECONDS, Runnable::run)) {
+		            int m = 100_000;
+		            long[] lateness = new long[m];
+		            CountDownLatch fired = new CountDownLatch(m);
+		            for (int i = 0; i < m; i++) {
+		                int id = i;
+		                long delayMs = r.nextInt(2_000);
+		                long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+		                wheel.schedule(() -> {
+		                    lateness[id] = System.nanoTime() - due;
+		                    fired.countDown();
+		                }, delayMs, TimeUnit.MILLISECONDS);
+		            }
+		            fired.await();
+		            Arrays.sort(lateness);
+		            System.out.printf("fired : %d, early=%d, lateness p50=%.1f ms p99=%.1f ms%n", m,
+		                    Arrays.stream(lateness).filter(l -> l < 0).count(), lateness[m / 2] / 1e6, lateness[m * 99 / 100] / 1e6);
+		        }
+		    }
+		}
+
+		-Benchmark prints ns/op for schedule and cancel of 1M timers (wheel vs ScheduledThreadPoolExecutor) and the lateness
+		 of 100K short timers; early must always be 0 (deadline is rounded up to the next tick).
+		-The wheel's numbers include the worker's part (bucket insert / unlink, drain() waits for it), not just the enqueue
+		 → same work as STPE's locked heap insert/remove, plus at most one 10 ms tick spread over 1M ops.
+
+		Sample output (JDK 17, 1 CPU):-
+			wheel : schedule   460 ns/op, cancel   383 ns/op
+			STPE  : schedule   786 ns/op, cancel   553 ns/op
+			fired : 100000, early=0, lateness p50=5.7 ms p99=16.0 ms
+		-Single threaded the gap is modest: most of the cost is allocation + cache misses, not the heap's log n.
+		 The wheel's bigger win is under many scheduling threads: they only touch lock-free queues, STPE makes them
+		 all queue on one lock (not measurable on this 1-CPU box).
+
+		-Cron layered on top (Spring 5.3+ CronExpression does the calendar math, the wheel does the waiting).
+		 Next fire = cron.next(max(now, last scheduled fire)) with the delay rounded up, like Spring's ReschedulingRunnable,
+		 so a fire that comes a few ms early can't find the same midnight again and run the job twice:
+
+		import org.springframework.scheduling.support.CronExpression;
+		import java.time.*;
+
+		final class CronTimer {
+		    private final TimingWheelScheduler wheel;
+		    private final CronExpression cron;
+		    private final ZoneId zone;
+		    private final Runnable task;
+		    private volatile TimingWheelScheduler.Timeout current;
+		    private volatile boolean cancelled;
+		    private ZonedDateTime lastScheduled;            // only touched by the constructor, then by the firing timer thread
+
+		    CronTimer(TimingWheelScheduler wheel, String expression, ZoneId zone, Runnable task) {
+		        this.wheel = wheel;
+		        this.cron = CronExpression.parse(expression);   // same syntax as @Scheduled(cron = "0 0 0 * * ?")
+		        this.zone = zone;
+		        this.task = task;
+		        scheduleNext();
+		    }
+
+		    private void scheduleNext() {
+		        ZonedDateTime now = ZonedDateTime.now(zone);
+		        // a fire that comes a few ms early must not compute the same midnight again → run twice
+		        ZonedDateTime base = lastScheduled != null && lastScheduled.isAfter(now) ? lastScheduled : now;
+		        ZonedDateTime next = cron.next(base);
+		        if (next == null || cancelled) return;
+		        lastScheduled = next;
+		        long delayNanos = Duration.between(now, next).toNanos();
+		        TimingWheelScheduler.Timeout t = wheel.schedule(() -> {
+		            try {
+		                task.run();
+		            } finally {
+		                scheduleNext();                         // one-shot timer per fire
+		            }
+		        }, TimeUnit.NANOSECONDS.toMillis(delayNanos + 999_999), TimeUnit.MILLISECONDS);   // round up, never early
+		        current = t;
+		        if (cancelled) t.cancel();                      // cancel() ran between the check above and this assignment
+		    }
+
+		    void cancel() {
+		        cancelled = true;
+		        TimingWheelScheduler.Timeout t = current;
+		        if (t != null) t.cancel();
+		    }
+		}
+
+		// Per-tenant daily report at midnight of the tenant's time zone, 100K tenants = 100K timers in the wheel
+		new CronTimer(wheel, "0 0 0 * * ?", ZoneId.of("Asia/Kolkata"), () -> reportService.dailyReport(tenantId));
+
+	Non-overlapping, Jittered and Sharded @Scheduled Jobs:-
+		-fixedRate = 5000 and a run takes 7 s → the next fires are already late when the run ends, runs go back-to-back
+		 (single scheduler thread) or overlap (pool scheduler / @Async) → same report computed twice at once.
+		-Every instance of the service fires at the same second → all of them hit the DB together.
+		-ScheduledJobRunner wraps the job body, the @Scheduled method only calls fire():
+			Overlap policy SKIP  → a fire while the previous run is active is dropped and counted as missed.
+			Overlap policy MERGE → all fires during a run collapse into ONE follow-up run right after it (nothing lost, no pile-up).
+			Jitter → each fire starts after a random 0..maxJitter delay. The timer thread only submits the shards to the
+			 worker pool, so jobs sharing one timer don't delay each other; no thread blocks waiting for the shards.
+			Shards → the work is split into N shards (e.g. by tenantId % N) processed in parallel on a worker pool, run ends when all shards end.
+		-Metrics (registry above): job_run_seconds{job}, job_shard_seconds{job}, job_missed_fires_total{job}, job_merged_fires_total{job}, job_failed_shards_total{job}.
+		Example:-
+
+		import java.util.*;
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.AtomicBoolean;
+
+		interface ShardedJob {
+		    void runShard(int shard, int shardCount) throws Exception;
+		}
+
+		final class ScheduledJobRunner {
+
+		    enum OverlapPolicy { SKIP, MERGE }
+
+		    private final String name;
+		    private final ShardedJob job;
+		    private final int shards;
+		    private final long maxJitterMs;
+		    private final OverlapPolicy policy;
+		    private final ExecutorService workers;
+		    private final ScheduledExecutorService jitterTimer;
+
+		    private final AtomicBoolean running = new AtomicBoolean();
+		    private final AtomicBoolean rerunRequested = new AtomicBoolean();
+
+		    private final Timer runTime;
+		    private final Timer shardTime;
+		    private final StripedCounter missed;
+		    private final StripedCounter merged;
+		    private final StripedCounter failedShards;
+
+		    ScheduledJobRunner(String name, ShardedJob job, int shards, long maxJitterMs, OverlapPolicy policy,
+		                       ExecutorService workers, ScheduledExecutorService jitterTimer) {
+		        this.name = name;
+		        this.job = job;
+		        this.shards = shards;
+		        this.maxJitterMs = maxJitterMs;
+		        this.policy = policy;
+		        this.workers = workers;
+		        this.jitterTimer = jitterTimer;
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        runTime = m.timer("job_run_seconds", "job", name);
+		        shardTime = m.timer("job_shard_seconds", "job", name);
+		        missed = m.counter("job_missed_fires_total", "job", name);
+		        merged = m.counter("job_merged_fires_total", "job", name);
+		        failedShards = m.counter("job_failed_shards_total", "job", name);
+		    }
+
+		    // Called by @Scheduled, returns immediately
+		    void fire() {
+		        if (!running.compareAndSet(false, true)) {
+		            if (policy == OverlapPolicy.MERGE && !rerunRequested.getAndSet(true)) {
+		                merged.increment();                    // first fire during this run → one follow-up run
+		            } else {
+		                missed.increment();                    // SKIP, or a follow-up is already requested
+		            }
+		            return;
+		        }
+		        long jitter = maxJitterMs == 0 ? 0 : ThreadLocalRandom.current().nextLong(maxJitterMs + 1);
+		        try {
+		            jitterTimer.schedule(this::startRun, jitter, TimeUnit.MILLISECONDS);   // timer thread only hands off
+		        } catch (RejectedExecutionException e) {              // timer shut down → no run will reset the flag
+		            running.set(false);
+		            missed.increment();
+		        }
+		    }
+
+		    // Submits the shards and returns; no thread waits for them, the last shard to finish continues the run
+		    private void startRun() {
+		        rerunRequested.set(false);
+		        long start = runTime.start();
+		        CompletableFuture<?>[] pending = new CompletableFuture<?>[shards];
+		        try {
+		            for (int shard = 0; shard < shards; shard++) {
+		                int s = shard;
+		                pending[shard] = CompletableFuture.runAsync(() -> {
+		                    long shardStart = shardTime.start();
+		                    try {
+		                        job.runShard(s, shards);
+		                    } catch (Exception e) {
+		                        failedShards.increment();
+		                        System.err.println("[" + name + "] shard " + s + " failed: " + e);
+		                    } finally {
+		                        shardTime.stop(shardStart);
+		                    }
+		                }, workers);
+		            }
+		        } catch (RejectedExecutionException e) {              // pool shut down
+		            running.set(false);
+		            return;
+		        }
+		        CompletableFuture.allOf(pending).whenComplete((ignored, error) -> {
+		            runTime.stop(start);
+		            finishRun();
+		        });
+		    }
+
+		    private void finishRun() {
+		        if (policy == OverlapPolicy.MERGE && rerunRequested.get()) {
+		            startRun();                                        // merged fires → one follow-up run, no jitter
+		            return;
+		        }
+		        running.set(false);
+		        // A fire that arrived between the check and running.set(false) would be lost → check once more.
+		        // getAndSet + CAS start the run directly: going through fire() again would count the merge twice
+		        if (policy == OverlapPolicy.MERGE && rerunRequested.getAndSet(false) && running.compareAndSet(false, true)) {
+		            startRun();
+		        }
+		    }
+		}
+
+		-ReportScheduler using it: 16 shards by tenant, up to 2 s jitter per instance, overlapping fires merged.
+
+		@Component
+		public class ReportScheduler {
+
+		    private final ScheduledJobRunner reportRunner;
+
+		    private final ExecutorService workers = Executors.newFixedThreadPool(8);
+		    private final ScheduledExecutorService jitterTimer = Executors.newSingleThreadScheduledExecutor();
+
+		    public ReportScheduler(ReportService reportService) {
+		        this.reportRunner = new ScheduledJobRunner("generateReport",
+		                (shard, shardCount) -> reportService.generateForTenants(tenantId -> tenantId % shardCount == shard),
+		                16, 2_000, ScheduledJobRunner.OverlapPolicy.MERGE, workers, jitterTimer);
+		    }
+
+		    // Run every 5 seconds
+		    @Scheduled(fixedRate = 5000)
+		    public void generateReport() {
+		        reportRunner.fire();               // returns at once, never overlaps, never piles up
+		    }
+
+		    // Non-daemon pools: without this the context (and the JVM) can't stop
+		    @PreDestroy
+		    public void shutdown() throws InterruptedException {
+		        jitterTimer.shutdownNow();         // drop jittered starts that have not begun
+		        workers.shutdown();                // let running shards finish
+		        workers.awaitTermination(30, TimeUnit.SECONDS);
+		    }
+		}
+
+	Incremental Reports instead of Full Recomputation:-
+		-generateReport()/dailyTask() scan the whole orders table on every fire → cost grows with table size, not with new activity.
+		-Incremental: keep running aggregates in memory and apply only the rows changed since the last run.
+			Watermark = (updated_at, id) of the last row applied. Next run: WHERE (updated_at, id) > watermark ORDER BY updated_at, id (keyset paging).
+			A changed order must first REMOVE its old contribution, then ADD the new one → we need the before-image.
+			 CDC feed (Debezium etc.) delivers before + after. With watermark polling, keep the last applied version of
+			 EVERY order inside the report range, closed ones too: a refund or correction on a DELIVERED order must
+			 retract what it added before, otherwise it is counted twice.
+			Report range = last RETENTION_DAYS order days. Older days are final: their aggregates and images are dropped,
+			 later changes to them are ignored → memory = orders of the range, not of the whole table.
+			Hard deletes never show up in an updated_at poll → an ON DELETE trigger writes (order_id, deleted_at) to
+			 order_deletions, the poll reads both tables in one keyset order, and a deletion only retracts the image.
+		-Report = read of the aggregates → O(days x statuses), not O(orders).
+		-Checkpoint: watermark + aggregates + order images written to a local file after each run: temp file,
+		 fsync (getFD().sync()), then atomic move → a crash right after the move can't leave an empty or half-written checkpoint.
+		 Restart → load checkpoint → continue from the watermark, no full rescan.
+		-Same rows applied twice would double count → apply + watermark advance happen together, and the checkpoint
+		 always stores both at once. Full rebuild stays available (delete the checkpoint) for schema changes or bugs.
+		-updated_at is set when the row is written, not when the transaction commits. A transaction that commits late
+		 makes its rows visible BELOW a watermark that has already moved past them → a plain "> watermark" poll skips them
+		 forever. Fix: only read up to dbNow - safetyLag, so every row at or below the cutoff is already committed.
+		 safetyLag must be longer than the longest write transaction (enforce it with a transaction timeout),
+		 and "now" comes from the DB, so app/DB clock skew does not matter. The price is reports that lag by safetyLag.
+		-Watermark keeps the full timestamp precision (Instant, micros/nanos). Truncating to millis puts the watermark
+		 below the last row → that row is read and applied again on the next run → double counted.
+		Example:-
+
+		import java.io.*;
+		import java.nio.file.*;
+		import java.time.Duration;
+		import java.time.Instant;
+		import java.time.LocalDate;
+		import java.time.ZoneOffset;
+		import java.util.*;
+
+		final class OrderRow {
+		    final long id;
+		    final Instant updatedAt;     // full DB precision
+		    final LocalDate day;
+		    final String status;
+		    final long amountCents;
+
+		    OrderRow(long id, Instant updatedAt, LocalDate day, String status, long amountCents) {
+		        this.id = id;
+		        this.updatedAt = updatedAt;
+		        this.day = day;
+		        this.status = status;
+		        this.amountCents = amountCents;
+		    }
+
+		    // Row from order_deletions: only id + time are known, the engine retracts its last image
+		    static OrderRow deleted(long id, Instant deletedAt) {
+		        return new OrderRow(id, deletedAt, null, "DELETED", 0L);
+		    }
+
+		    boolean isDeleted() {
+		        return status.equals("DELETED");
+		    }
+		}
+
+		interface OrderSource {
+		    // Rows (and deletions) with (updatedAt, id) > (afterUpdatedAt, afterId) and updatedAt <= upTo, ordered by updatedAt, id
+		    List<OrderRow> changedSince(Instant afterUpdatedAt, long afterId, Instant upTo, int limit);
+
+		    // Current time on the DB clock (the clock that sets updated_at)
+		    Instant now();
+		}
+
+		final class IncrementalReportEngine {
+
+		    private static final int PAGE = 5_000;
+		    private static final Duration SAFETY_LAG = Duration.ofSeconds(30);   // > longest write transaction
+		    private static final int RETENTION_DAYS = 400;                       // report range, older days are final
+
+		    private final OrderSource source;
+		    private final Path checkpointFile;
+
+		    // Running aggregates: day → status → {count, amount}
+		    private final TreeMap<LocalDate, Map<String, long[]>> stats = new TreeMap<>();
+		    private final Map<Long, OrderRow> images = new HashMap<>();       // last applied image of every order in range
+		    private Instant watermarkUpdatedAt = Instant.EPOCH;               // first run = full load
+		    private long watermarkId = 0L;
+		    private LocalDate prunedBefore = LocalDate.MIN;
+
+		    IncrementalReportEngine(OrderSource source, Path checkpointFile) throws IOException {
+		        this.source = source;
+		        this.checkpointFile = checkpointFile;
+		        if (Files.exists(checkpointFile)) load();
+		    }
+
+		    // Applies every change since the watermark, returns the number of rows applied
+		    synchronized int catchUp() {
+		        int applied = 0;
+		        // Rows up to the cutoff are committed (or never will be): nothing can appear below the watermark later
+		        Instant upTo = source.now().minus(SAFETY_LAG);
+		        LocalDate firstDay = LocalDate.ofInstant(upTo, ZoneOffset.UTC).minusDays(RETENTION_DAYS);
+		        List<OrderRow> page;
+		        do {
+		            page = source.changedSince(watermarkUpdatedAt, watermarkId, upTo, PAGE);
+		            for (OrderRow row : page) {
+		                OrderRow before = images.remove(row.id);
+		                if (before != null) contribute(before, -1);
+		                if (!row.isDeleted() && !row.day.isBefore(firstDay)) {
+		                    contribute(row, +1);
+		                    images.put(row.id, row);         // closed orders too: a refund later must retract this
+		                }
+		                watermarkUpdatedAt = row.updatedAt;
+		                watermarkId = row.id;
+		            }
+		            applied += page.size();
+		        } while (page.size() == PAGE);
+		        if (firstDay.isAfter(prunedBefore)) {        // once per day, not on every run
+		            stats.headMap(firstDay).clear();
+		            images.values().removeIf(row -> row.day.isBefore(firstDay));
+		            prunedBefore = firstDay;
+		        }
+		        return applied;
+		    }
+
+		    private void contribute(OrderRow row, int sign) {
+		        long[] cell = stats.computeIfAbsent(row.day, d -> new TreeMap<>())
+		                           .computeIfAbsent(row.status, s -> new long[2]);
+		        cell[0] += sign;
+		        cell[1] += sign * row.amountCents;
+		    }
+
+		    synchronized String report(LocalDate from, LocalDate to) {
+		        StringBuilder sb = new StringBuilder();
+		        stats.subMap(from, true, to, true).forEach((day, byStatus) -> byStatus.forEach((status, c) -> {
+		            if (c[0] != 0) sb.append(String.format("%s %-10s orders=%6d amount=%12.2f%n", day, status, c[0], c[1] / 100.0));
+		        }));
+		        return sb.toString();
+		    }
+
+		    synchronized void checkpoint() throws IOException {
+		        Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+		             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file))) {
+		            writeInstant(out, watermarkUpdatedAt);
+		            out.writeLong(watermarkId);
+		            out.writeInt(stats.size());
+		            for (Map.Entry<LocalDate, Map<String, long[]>> day : stats.entrySet()) {
+		                out.writeLong(day.getKey().toEpochDay());
+		                out.writeInt(day.getValue().size());
+		                for (Map.Entry<String, long[]> s : day.getValue().entrySet()) {
+		                    out.writeUTF(s.getKey());
+		                    out.writeLong(s.getValue()[0]);
+		                    out.writeLong(s.getValue()[1]);
+		                }
+		            }
+		            out.writeInt(images.size());
+		            for (OrderRow o : images.values()) {
+		                out.writeLong(o.id);
+		                writeInstant(out, o.updatedAt);
+		                out.writeLong(o.day.toEpochDay());
+		                out.writeUTF(o.status);
+		                out.writeLong(o.amountCents);
+		            }
+		            out.flush();
+		            file.getFD().sync();                     // on disk before the move makes it the checkpoint
+		        }
+		        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		    }
+
+		    private void load() throws IOException {
+		        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(checkpointFile)))) {
+		            watermarkUpdatedAt = readInstant(in);
+		            watermarkId = in.readLong();
+		            for (int d = in.readInt(); d > 0; d--) {
+		                Map<String, long[]> byStatus = new TreeMap<>();
+		                stats.put(LocalDate.ofEpochDay(in.readLong()), byStatus);
+		                for (int s = in.readInt(); s > 0; s--) byStatus.put(in.readUTF(), new long[] { in.readLong(), in.readLong() });
+		            }
+		            for (int o = in.readInt(); o > 0; o--) {
+		                OrderRow row = new OrderRow(in.readLong(), readInstant(in), LocalDate.ofEpochDay(in.readLong()), in.readUTF(), in.readLong());
+		                images.put(row.id, row);
+		            }
+		        }
+		    }
+
+		    // Seconds + nanos: no precision lost between runs
+		    private static void writeInstant(DataOutputStream out, Instant t) throws IOException {
+		        out.writeLong(t.getEpochSecond());
+		        out.writeInt(t.getNano());
+		    }
+
+		    private static Instant readInstant(DataInputStream in) throws IOException {
+		        return Instant.ofEpochSecond(in.readLong(), in.readInt());
+		    }
+		}
+
+		-ReportScheduler: catch up + checkpoint on every fire, the daily job reads yesterday from the aggregates.
+
+		@Component
+		public class ReportScheduler {
+
+		    private final IncrementalReportEngine engine;
+
+		    public ReportScheduler(JdbcTemplate jdbc) throws IOException {
+		        OrderSource source = new OrderSource() {
+		            @Override
+		            public List<OrderRow> changedSince(Instant afterUpdatedAt, long afterId, Instant upTo, int limit) {
+		                Timestamp after = Timestamp.from(afterUpdatedAt);     // keeps the nanos
+		                Timestamp cutoff = Timestamp.from(upTo);
+		                // order_deletions(order_id, deleted_at) is filled by an ON DELETE trigger on orders
+		                return jdbc.query(
+		                        "SELECT * FROM (" +
+		                        " SELECT id, updated_at, order_date, status, amount_cents FROM orders" +
+		                        "  WHERE (updated_at > ? OR (updated_at = ? AND id > ?)) AND updated_at <= ?" +
+		                        " UNION ALL" +
+		                        " SELECT order_id, deleted_at, NULL, 'DELETED', 0 FROM order_deletions" +
+		                        "  WHERE (deleted_at > ? OR (deleted_at = ? AND order_id > ?)) AND deleted_at <= ?" +
+		                        ") changes ORDER BY updated_at, id LIMIT ?",
+		                        (rs, n) -> "DELETED".equals(rs.getString("status"))
+		                                ? OrderRow.deleted(rs.getLong("id"), rs.getTimestamp("updated_at").toInstant())
+		                                : new OrderRow(rs.getLong("id"), rs.getTimestamp("updated_at").toInstant(),
+		                                        rs.getDate("order_date").toLocalDate(), rs.getString("status"), rs.getLong("amount_cents")),
+		                        after, after, afterId, cutoff, after, after, afterId, cutoff, limit);
+		            }
+
+		            @Override
+		            public Instant now() {
+		                return jdbc.queryForObject("SELECT CURRENT_TIMESTAMP", Timestamp.class).toInstant();
+		            }
+		        };
+		        this.engine = new IncrementalReportEngine(source, Paths.get("data/report-checkpoint.bin"));
+		    }
+
+		    // Run every 5 seconds: only rows changed since the last run (minus the safety lag) are read
+		    @Scheduled(fixedRate = 5000)
+		    public void generateReport() throws IOException {
+		        int applied = engine.catchUp();
+		        engine.checkpoint();
+		        System.out.println("Report generated at " + new Date() + " (" + applied + " changed orders)");
+		    }
+
+		    // Run using cron (every day at midnight)
+		    @Scheduled(cron = "0 0 0 * * ?")
+		    public void dailyTask() {
+		        LocalDate yesterday = LocalDate.now().minusDays(1);
+		        System.out.print(engine.report(yesterday, yesterday));
+		    }
+		}
+
 		
 | Feature          | `@Async`                                                          | `@Scheduled`                                      |
 | ---------------- | ----------------------------------------------------------------- | ------------------------------------------------- |
@@ -2476,6 +6804,837 @@ Primary VS Qaulifier
 
 		-First call → method executes, result cached.
 		-Second call with same ID → method skipped, cached result returned.
+
+	W-TinyLFU Cache behind @Cacheable("products"):-
+		-The default ConcurrentMapCacheManager never evicts → products cache grows until OOM. Plain LRU evicts, but one
+		 scan over the catalog (search crawl, export job) pushes every popular product out.
+		-W-TinyLFU = small window LRU (1%) + main space as segmented LRU (probation 20% / protected 80%)
+		 + a frequency sketch that decides who is allowed into main.
+			New entry → window. Window full → its oldest entry becomes a candidate for main.
+			Main full → candidate vs main's victim (oldest in probation): the one with the higher estimated frequency stays.
+			One-hit wonders die in the window, popular keys survive scans.
+			Hit in probation → promoted to protected. Protected full → its oldest entry demoted back to probation.
+		-Frequency sketch = Count-Min sketch with 4-bit counters (16 per long, 4 rows) → a few bytes per entry,
+		 estimate = min of the 4 counters. After 10 x maximumSize increments every counter is halved (aging),
+		 so yesterday's bestseller does not stay "popular" forever.
+		-Bounded by weight: weigher(key, value) → maxWeight. Weigher = 1 → size-based; weigher = approx bytes → memory budget.
+		-Per-entry expiry: expireAfterWrite(key, value) → e.g. short TTL for cached nulls (product not found), longer for products.
+		 Expired entries are removed on read, and are the first to go when eviction looks at them.
+		-Reads are lock-free (ConcurrentHashMap). A hit only records its node in a striped read buffer:
+		 4 x CPUs stripes (picked by thread id) of 16 slots each, one CAS per read, no lock.
+		 A full stripe → tryLock the policy lock and drain every stripe into the sketch + LRU queues.
+		 Writes drain it first too. A full stripe or a lost CAS drops the record. Losing a few access records costs
+		 little hit rate; blocking readers costs a lot. A miss is counted in the sketch when the key is added.
+		 (Caffeine does the same with its lossy read buffer — in production just use Caffeine + CaffeineCacheManager,
+		  this is a small version of what it does inside.)
+		-get(key, loader) loads once per key: the first caller registers a future in a loading map and runs the loader,
+		 concurrent callers for the same key wait on that future (value or the loader's exception).
+		 The entry is cached before the future completes and is removed from the map only after that.
+		-Metrics through MetricsRegistry: hit/miss counters, hit ratio gauge, evictions by cause, admission rejects, load time,
+		 stale reads (entry present but rejected by the caller's isCurrent check → counted as a miss, not a hit).
+		 Load time is only visible when Spring calls get(key, valueLoader) → @Cacheable(sync = true).
+		Example:-
+
+		import java.util.concurrent.CompletableFuture;
+		import java.util.concurrent.CompletionException;
+		import java.util.concurrent.ConcurrentHashMap;
+		import java.util.concurrent.atomic.AtomicLongArray;
+		import java.util.concurrent.atomic.AtomicReferenceArray;
+		import java.util.concurrent.locks.ReentrantLock;
+		import java.util.function.*;
+
+		// 4-bit Count-Min sketch: 16 counters per long, 4 rows, halved periodically so old popularity fades
+		final class FrequencySketch {
+		    private final long[] table;
+		    private final int mask;
+		    private final int sampleSize;
+		    private int additions;
+
+		    FrequencySketch(long maximumSize) {
+		        int size = Integer.highestOneBit((int) Math.max(64, Math.min(maximumSize, 1 << 24)) - 1) << 1;
+		        table = new long[size];
+		        mask = size - 1;
+		        sampleSize = 10 * (int) Math.max(64, Math.min(maximumSize, 1 << 24));
+		    }
+
+		    int frequency(Object key) {
+		        int h = spread(key.hashCode());
+		        int min = 15;
+		        for (int row = 0; row < 4; row++) min = Math.min(min, counter(h, row));
+		        return min;
+		    }
+
+		    void increment(Object key) {
+		        int h = spread(key.hashCode());
+		        boolean added = false;
+		        for (int row = 0; row < 4; row++) {
+		            int index = index(h, row);
+		            int shift = ((h >>> (row << 3)) & 15) << 2;
+		            if (((table[index] >>> shift) & 15) < 15) {
+		                table[index] += 1L << shift;
+		                added = true;
+		            }
+		        }
+		        if (added && ++additions == sampleSize) reset();
+		    }
+
+		    // Aging: halve every counter
+		    private void reset() {
+		        for (int i = 0; i < table.length; i++) table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+		        additions /= 2;
+		    }
+
+		    private int counter(int h, int row) {
+		        int shift = ((h >>> (row << 3)) & 15) << 2;
+		        return (int) ((table[index(h, row)] >>> shift) & 15);
+		    }
+
+		    private int index(int h, int row) {
+		        long hash = (h + SEEDS[row]) * SEEDS[row];
+		        hash += hash >>> 32;
+		        return (int) hash & mask;
+		    }
+
+		    private static int spread(int x) {
+		        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+		        return (x >>> 16) ^ x;
+		    }
+
+		    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+		}
+
+		final class TinyLfuCache<K, V> {
+
+		    private enum Queue { WINDOW, PROBATION, PROTECTED }
+
+		    private static final class Node<K, V> {
+		        final K key;
+		        volatile V value;
+		        volatile long expiresAt;
+		        int weight;
+		        Queue queue;
+		        Node<K, V> prev, next;
+
+		        Node(K key, V value, int weight, long expiresAt) {
+		            this.key = key;
+		            this.value = value;
+		            this.weight = weight;
+		            this.expiresAt = expiresAt;
+		        }
+		    }
+
+		    // Doubly linked list, head = least recently used
+		    private static final class Deque<K, V> {
+		        Node<K, V> head, tail;
+		        long weight;
+
+		        void addLast(Node<K, V> n) {
+		            n.prev = tail;
+		            n.next = null;
+		            if (tail == null) head = n; else tail.next = n;
+		            tail = n;
+		            weight += n.weight;
+		        }
+
+		        void remove(Node<K, V> n) {
+		            if (n.prev == null) head = n.next; else n.prev.next = n.next;
+		            if (n.next == null) tail = n.prev; else n.next.prev = n.prev;
+		            n.prev = n.next = null;
+		            weight -= n.weight;
+		        }
+
+		        void moveToLast(Node<K, V> n) {
+		            remove(n);
+		            addLast(n);
+		        }
+		    }
+
+		    // Striped lossy ring buffers for reads: a hit is a CAS + slot write, the policy lock is taken only to drain
+		    private static final class ReadBuffer<K, V> {
+		        static final int STRIPES = Integer.highestOneBit(4 * Runtime.getRuntime().availableProcessors() - 1) << 1;
+		        static final int SIZE = 16;                          // slots per stripe
+		        static final int PAD = 16;                           // counters 128 bytes apart → no false sharing
+
+		        final AtomicReferenceArray<Node<K, V>> slots = new AtomicReferenceArray<>(STRIPES * SIZE);
+		        final AtomicLongArray writes = new AtomicLongArray(STRIPES * PAD);
+		        final AtomicLongArray reads = new AtomicLongArray(STRIPES * PAD);
+
+		        // Stripe full or CAS lost → the access is dropped, never waited for
+		        void offer(Node<K, V> n) {
+		            int stripe = stripe();
+		            long tail = writes.get(stripe * PAD);
+		            if (tail - reads.get(stripe * PAD) >= SIZE) return;
+		            if (writes.compareAndSet(stripe * PAD, tail, tail + 1)) {
+		                slots.lazySet(stripe * SIZE + (int) (tail & (SIZE - 1)), n);
+		            }
+		        }
+
+		        boolean isFull() {
+		            int stripe = stripe();
+		            return writes.get(stripe * PAD) - reads.get(stripe * PAD) >= SIZE;
+		        }
+
+		        // Policy lock held: the only reader
+		        void drainTo(Consumer<Node<K, V>> consumer) {
+		            for (int stripe = 0; stripe < STRIPES; stripe++) {
+		                long head = reads.get(stripe * PAD), tail = writes.get(stripe * PAD);
+		                for (; head != tail; head++) {
+		                    int index = stripe * SIZE + (int) (head & (SIZE - 1));
+		                    Node<K, V> n = slots.get(index);
+		                    if (n == null) break;                    // slot claimed but not written yet → next drain
+		                    slots.lazySet(index, null);
+		                    consumer.accept(n);
+		                }
+		                reads.lazySet(stripe * PAD, head);
+		            }
+		        }
+
+		        private static int stripe() {
+		            return (int) ((Thread.currentThread().getId() * 0x9E3779B97F4A7C15L) >>> 40) & (STRIPES - 1);
+		        }
+		    }
+
+		    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+		    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+		    private final ReadBuffer<K, V> readBuffer = new ReadBuffer<>();
+		    private final ReentrantLock policyLock = new ReentrantLock();
+		    private final FrequencySketch sketch;
+		    private final Deque<K, V> window = new Deque<>();
+		    private final Deque<K, V> probation = new Deque<>();
+		    private final Deque<K, V> protectedQ = new Deque<>();
+		    private final long maxWeight, maxWindow, maxProtected;
+		    private final ToIntBiFunction<K, V> weigher;
+		    private final ToLongBiFunction<K, V> expireAfterWriteNanos;   // per entry
+
+		    final StripedCounter hits, misses, stale, evictions, expirations, rejections;
+		    final Timer loadTime;
+
+		    TinyLfuCache(String name, long maxWeight, ToIntBiFunction<K, V> weigher, ToLongBiFunction<K, V> expireAfterWriteNanos) {
+		        this.maxWeight = maxWeight;
+		        this.maxWindow = Math.max(1, maxWeight / 100);                  // 1% window LRU
+		        this.maxProtected = (long) ((maxWeight - maxWindow) * 0.8);   // 80% of main is protected
+		        this.weigher = weigher;
+		        this.expireAfterWriteNanos = expireAfterWriteNanos;
+		        this.sketch = new FrequencySketch(maxWeight);
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        hits = m.counter("cache_requests_total", "cache", name, "result", "hit");
+		        misses = m.counter("cache_requests_total", "cache", name, "result", "miss");
+		        stale = m.counter("cache_stale_reads_total", "cache", name);
+		        evictions = m.counter("cache_evictions_total", "cache", name, "cause", "size");
+		        expirations = m.counter("cache_evictions_total", "cache", name, "cause", "expired");
+		        rejections = m.counter("cache_admission_rejected_total", "cache", name);
+		        loadTime = m.timer("cache_load_seconds", "cache", name);
+		        m.gauge("cache_hit_ratio", () -> {
+		            double h = hits.sum(), total = h + misses.sum();
+		            return total == 0 ? 0 : h / total;
+		        }, "cache", name);
+		    }
+
+		    V getIfPresent(K key) {
+		        return getIfPresent(key, value -> true);
+		    }
+
+		    // Present but rejected by isCurrent (e.g. older than a clear) = miss: no hit, no sketch bump, no recency update
+		    V getIfPresent(K key, Predicate<? super V> isCurrent) {
+		        Node<K, V> n = data.get(key);
+		        if (n == null || n.expiresAt - System.nanoTime() <= 0) {
+		            misses.increment();
+		            if (n != null) expire(n);
+		            return null;                                  // frequency of a miss is counted when the key is added
+		        }
+		        V value = n.value;
+		        if (!isCurrent.test(value)) {
+		            stale.increment();
+		            misses.increment();
+		            return null;
+		        }
+		        hits.increment();
+		        afterRead(n);
+		        return value;
+		    }
+
+		    // No stats, no access record: re-check inside a read that was already counted
+		    V peek(K key) {
+		        Node<K, V> n = data.get(key);
+		        return n == null || n.expiresAt - System.nanoTime() <= 0 ? null : n.value;
+		    }
+
+		    // Loads on miss, one load per key: concurrent callers for the same key wait for the first one (sync = true)
+		    V get(K key, Function<? super K, ? extends V> loader) {
+		        V value = getIfPresent(key);
+		        if (value != null) return value;
+		        CompletableFuture<V> mine = new CompletableFuture<>();
+		        CompletableFuture<V> inFlight = loading.putIfAbsent(key, mine);
+		        if (inFlight != null) return await(inFlight);
+		        try {
+		            Node<K, V> n = data.get(key);                 // a load may have finished between the miss and putIfAbsent
+		            if (n != null && n.expiresAt - System.nanoTime() > 0) {
+		                value = n.value;
+		            } else {
+		                long start = loadTime.start();
+		                value = loader.apply(key);
+		                loadTime.stop(start);
+		                if (value != null) put(key, value);       // cached before the waiters are released
+		            }
+		            mine.complete(value);
+		            return value;
+		        } catch (RuntimeException | Error e) {
+		            mine.completeExceptionally(e);                // waiters get the loader's exception
+		            throw e;
+		        } finally {
+		            loading.remove(key, mine);
+		        }
+		    }
+
+		    private static <V> V await(CompletableFuture<V> load) {
+		        try {
+		            return load.join();
+		        } catch (CompletionException e) {
+		            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+		            if (e.getCause() instanceof Error) throw (Error) e.getCause();
+		            throw e;
+		        }
+		    }
+
+		    void put(K key, V value) {
+		        int weight = weigher.applyAsInt(key, value);
+		        long expiresAt = System.nanoTime() + expireAfterWriteNanos.applyAsLong(key, value);
+		        policyLock.lock();
+		        try {
+		            drainReadBuffer();
+		            sketch.increment(key);
+		            Node<K, V> existing = data.get(key);
+		            if (existing != null) {                       // update in place, keep its queue position
+		                queueOf(existing).remove(existing);
+		                existing.value = value;
+		                existing.weight = weight;
+		                existing.expiresAt = expiresAt;
+		                queueOf(existing).addLast(existing);
+		            } else {
+		                Node<K, V> n = new Node<>(key, value, weight, expiresAt);
+		                n.queue = Queue.WINDOW;
+		                window.addLast(n);
+		                data.put(key, n);
+		            }
+		            evict();
+		        } finally {
+		            policyLock.unlock();
+		        }
+		    }
+
+		    void invalidate(K key) {
+		        policyLock.lock();
+		        try {
+		            Node<K, V> n = data.remove(key);
+		            if (n != null) queueOf(n).remove(n);
+		        } finally {
+		            policyLock.unlock();
+		        }
+		    }
+
+		    void invalidateAll() {
+		        policyLock.lock();
+		        try {
+		            for (Node<K, V> n : data.values()) queueOf(n).remove(n);
+		            data.clear();
+		        } finally {
+		            policyLock.unlock();
+		        }
+		    }
+
+		    long weightedSize() { return window.weight + probation.weight + protectedQ.weight; }
+
+		    // Hit → buffer it; a full stripe is drained by whoever gets the lock, the others move on
+		    private void afterRead(Node<K, V> n) {
+		        readBuffer.offer(n);
+		        if (!readBuffer.isFull() || !policyLock.tryLock()) return;
+		        try {
+		            drainReadBuffer();
+		        } finally {
+		            policyLock.unlock();
+		        }
+		    }
+
+		    private void drainReadBuffer() {
+		        readBuffer.drainTo(this::onAccess);
+		    }
+
+		    // Policy lock held: frequency + recency update for one buffered read
+		    private void onAccess(Node<K, V> n) {
+		        sketch.increment(n.key);
+		        if (data.get(n.key) != n) return;                 // removed or replaced since the read
+		        if (n.queue == Queue.WINDOW) {
+		            window.moveToLast(n);
+		        } else if (n.queue == Queue.PROBATION) {          // second hit → promote
+		            probation.remove(n);
+		            n.queue = Queue.PROTECTED;
+		            protectedQ.addLast(n);
+		            while (protectedQ.weight > maxProtected && protectedQ.head != null) {
+		                Node<K, V> demoted = protectedQ.head;
+		                protectedQ.remove(demoted);
+		                demoted.queue = Queue.PROBATION;
+		                probation.addLast(demoted);
+		            }
+		        } else {
+		            protectedQ.moveToLast(n);
+		        }
+		    }
+
+		    // Window overflow → candidates; a candidate stays in main only if it is more frequent than main's victim
+		    private void evict() {
+		        Node<K, V> candidate = evictFromWindow();
+		        while (weightedSize() > maxWeight) {
+		            // main's victim: oldest probation entry that is not a candidate of this call, then protected
+		            Node<K, V> victim = probation.head != candidate ? probation.head : protectedQ.head;
+		            Node<K, V> evicted;
+		            if (victim == null) {
+		                if (candidate == null) break;
+		                evicted = candidate;                      // main holds only candidates → oldest one goes
+		                candidate = candidate.next;
+		            } else if (candidate == null || victim.expiresAt - System.nanoTime() <= 0) {
+		                evicted = victim;                         // weight grew, nothing to admit / victim already dead
+		            } else if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+		                evicted = victim;                         // TinyLFU admission: candidate is more popular, it stays
+		                candidate = candidate.next;
+		            } else {
+		                evicted = candidate;
+		                candidate = candidate.next;
+		                rejections.increment();
+		            }
+		            queueOf(evicted).remove(evicted);
+		            data.remove(evicted.key, evicted);
+		            evictions.increment();
+		        }
+		    }
+
+		    // Moves the window's overflow to the probation tail, returns the first node moved (null if none).
+		    // Only these nodes are admission candidates: demoted protected entries also sit at the probation tail.
+		    private Node<K, V> evictFromWindow() {
+		        Node<K, V> first = null;
+		        while (window.weight > maxWindow && window.head != null) {
+		            Node<K, V> n = window.head;
+		            window.remove(n);
+		            n.queue = Queue.PROBATION;
+		            probation.addLast(n);
+		            if (first == null) first = n;
+		        }
+		        return first;
+		    }
+
+		    private void expire(Node<K, V> n) {
+		        policyLock.lock();
+		        try {
+		            if (data.remove(n.key, n)) {
+		                queueOf(n).remove(n);
+		                expirations.increment();
+		            }
+		        } finally {
+		            policyLock.unlock();
+		        }
+		    }
+
+		    private Deque<K, V> queueOf(Node<K, V> n) {
+		        return n.queue == Queue.WINDOW ? window : n.queue == Queue.PROBATION ? probation : protectedQ;
+		    }
+		}
+
+		public class HitRateDemo {
+		    public static void main(String[] args) {
+		        int capacity = 1_000, keys = 100_000, requests = 2_000_000;
+		        double[] cdf = new double[keys];                       // Zipf(0.9) popularity, like product page views
+		        double total = 0;
+		        for (int i = 0; i < keys; i++) cdf[i] = total += 1 / Math.pow(i + 1, 0.9);
+		        java.util.Random random = new java.util.Random(1);
+		        int[] trace = new int[requests];
+		        for (int i = 0; i < requests; i++) {
+		            int rank = java.util.Arrays.binarySearch(cdf, random.nextDouble() * total);
+		            trace[i] = rank < 0 ? -rank - 1 : rank;
+		        }
+
+		        java.util.Map<Integer, Integer> lru = new java.util.LinkedHashMap<>(16, 0.75f, true) {
+		            protected boolean removeEldestEntry(java.util.Map.Entry<Integer, Integer> e) { return size() > capacity; }
+		        };
+		        long hits = 0;
+		        for (int key : trace) if (lru.get(key) != null) hits++; else lru.put(key, key);
+		        System.out.printf("LRU       hit rate %.1f%%%n", 100.0 * hits / requests);
+
+		        TinyLfuCache<Integer, Integer> cache = new TinyLfuCache<>("products", capacity, (k, v) -> 1, (k, v) -> Long.MAX_VALUE / 4);
+		        for (int key : trace) if (cache.getIfPresent(key) == null) cache.put(key, key);
+		        System.out.printf("W-TinyLFU hit rate %.1f%%%n", 100.0 * cache.hits.sum() / requests);
+		        MetricsRegistry.GLOBAL.scrape().lines()
+		                .filter(l -> l.startsWith("cache_hit_ratio") || l.contains("cause=\"size\""))
+		                .forEach(System.out::println);
+		    }
+		}
+
+		Sample output (JDK 17, 1,000 entries, 100,000 products, Zipf 0.9 trace):-
+			LRU       hit rate 34.2%
+			W-TinyLFU hit rate 45.1%
+			cache_evictions_total{cache="products",cause="size"} 1096544
+			cache_hit_ratio{cache="products"} 0.451228
+
+		Plugging it into Spring:-
+
+		import org.springframework.cache.CacheManager;
+		import org.springframework.cache.annotation.*;
+		import org.springframework.cache.support.*;
+		import org.springframework.context.annotation.*;
+		import org.springframework.stereotype.Service;
+		import java.util.List;
+		import java.util.concurrent.*;
+
+		// Spring adapter: AbstractValueAdaptingCache handles null values (NullValue) and the lookup → fromStoreValue plumbing
+		public class TinyLfuSpringCache extends AbstractValueAdaptingCache {
+
+		    private final String name;
+		    private final TinyLfuCache<Object, Object> cache;
+
+		    public TinyLfuSpringCache(String name, TinyLfuCache<Object, Object> cache) {
+		        super(true);   // cache "not found" too, so a missing product does not hit the DB every time
+		        this.name = name;
+		        this.cache = cache;
+		    }
+
+		    @Override
+		    public String getName() { return name; }
+
+		    @Override
+		    public Object getNativeCache() { return cache; }
+
+		    @Override
+		    protected Object lookup(Object key) { return cache.getIfPresent(key); }
+
+		    @Override
+		    @SuppressWarnings("unchecked")
+		    public <T> T get(Object key, Callable<T> valueLoader) {
+		        return (T) fromStoreValue(cache.get(key, k -> {
+		            try {
+		                return toStoreValue(valueLoader.call());
+		            } catch (Exception e) {
+		                throw new ValueRetrievalException(key, valueLoader, e);
+		            }
+		        }));
+		    }
+
+		    @Override
+		    public void put(Object key, Object value) { cache.put(key, toStoreValue(value)); }
+
+		    @Override
+		    public void evict(Object key) { cache.invalidate(key); }
+
+		    @Override
+		    public void clear() { cache.invalidateAll(); }
+		}
+
+		@Configuration
+		@EnableCaching
+		public class CacheConfig {
+
+		    @Bean
+		    public CacheManager cacheManager() {
+		        TinyLfuCache<Object, Object> products = new TinyLfuCache<>(
+		                "products",
+		                10_000,                                           // max weight
+		                (key, value) -> 1,                                // size-based; return approx bytes for a memory budget
+		                (key, value) -> value == NullValue.INSTANCE
+		                        ? TimeUnit.SECONDS.toNanos(30)            // "not found" expires quickly
+		                        : TimeUnit.MINUTES.toNanos(10));
+		        SimpleCacheManager manager = new SimpleCacheManager();
+		        manager.setCaches(List.of(new TinyLfuSpringCache("products", products)));
+		        return manager;
+		    }
+		}
+
+		@Service
+		public class ProductService {
+
+		    // sync = true → Spring calls cache.get(key, loader) → load time is recorded
+		    @Cacheable(value = "products", key = "#productId", sync = true)
+		    public Product getProductById(String productId) {
+		        System.out.println("Fetching product from DB: " + productId);
+		        return new Product(productId, "Laptop", 75000);
+		    }
+		}
+
+	Cache Stampede: Single-Flight Loading + Refresh-Ahead:-
+		-Hot productId expires → every request in flight misses at once → N x "Fetching product from DB" for the same row.
+		 sync = true only hands the loader to Cache.get(key, valueLoader) → the cache must make concurrent callers share one load
+		 (TinyLfuCache.get above does; plain cache-aside code doing getIfPresent + put does not).
+		-Single-flight: per-key CompletableFuture in a ConcurrentHashMap (inFlight).
+			putIfAbsent wins → this thread loads, puts the value, completes the future.
+			putIfAbsent loses → wait on the winner's future → 1 DB call per key per miss, no matter how many callers.
+			Load fails → all waiters get the same exception, entry removed from inFlight → next miss retries.
+			Winner re-checks the cache first → a load that finished between its miss and putIfAbsent is not repeated.
+			Value is put before the future is removed → later callers hit the cache instead of starting a new load.
+		-Refresh-ahead: refreshAfter < expiry (e.g. 8 min vs 10 min). Read of an entry older than refreshAfter →
+		 return the current value immediately + reload on a background executor.
+			Only keys that are read get refreshed → popular products stay warm, cold ones just expire.
+			Refresh uses the same inFlight slot → at most one refresh per key, a miss during refresh waits for it.
+			Refresh fails or is rejected (pool full) → its future completes with the OLD value and the error is logged →
+			 callers waiting on it get the old value, and it is served until the real expiry → DB blips do not reach users.
+			Reloader returns null (product deleted) → entry removed.
+		-Refresh runs without the caller's request → it needs its own loader (repository call), not Spring's valueLoader.
+		-Refresh pool is a @Bean with destroyMethod = "shutdown" → stopped with the context, not leaked.
+		-Metrics: cache_loads_coalesced_total (callers that waited instead of loading), cache_refreshes_total,
+		 cache_refresh_failures_total, plus load time from the W-TinyLFU timer.
+		Example:-
+
+		import java.util.concurrent.*;
+		import java.util.function.*;
+
+		// Single-flight loading + refresh-ahead on top of TinyLfuCache; each value is stored with the time it was loaded
+		final class RefreshingCache<K, V> {
+
+		    static final class Loaded<V> {
+		        final V value;
+		        final long loadedAt;
+
+		        Loaded(V value, long loadedAt) {
+		            this.value = value;
+		            this.loadedAt = loadedAt;
+		        }
+		    }
+
+		    private final String name;
+		    private final TinyLfuCache<K, Loaded<V>> cache;
+		    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+		    private final long refreshAfterNanos;                       // < expiry, so hot keys are reloaded before they expire
+		    private final Function<? super K, ? extends V> reloader;
+		    private final Executor refreshExecutor;
+
+		    final StripedCounter coalesced, refreshes, refreshFailures;
+
+		    RefreshingCache(String name, long maxWeight, ToIntBiFunction<K, V> weigher, ToLongBiFunction<K, V> expireAfterWriteNanos,
+		                    long refreshAfterNanos, Function<? super K, ? extends V> reloader, Executor refreshExecutor) {
+		        this.name = name;
+		        this.cache = new TinyLfuCache<>(name, maxWeight,
+		                (k, loaded) -> weigher.applyAsInt(k, loaded.value),
+		                (k, loaded) -> expireAfterWriteNanos.applyAsLong(k, loaded.value));
+		        this.refreshAfterNanos = refreshAfterNanos;
+		        this.reloader = reloader;
+		        this.refreshExecutor = refreshExecutor;
+		        MetricsRegistry m = MetricsRegistry.GLOBAL;
+		        coalesced = m.counter("cache_loads_coalesced_total", "cache", name);
+		        refreshes = m.counter("cache_refreshes_total", "cache", name);
+		        refreshFailures = m.counter("cache_refresh_failures_total", "cache", name);
+		    }
+
+		    V getIfPresent(K key) {
+		        return getIfPresent(key, value -> true);
+		    }
+
+		    // isCurrent runs before any hit/frequency accounting → a rejected value is a miss and is not refreshed
+		    V getIfPresent(K key, Predicate<? super V> isCurrent) {
+		        Loaded<V> entry = cache.getIfPresent(key, loaded -> isCurrent.test(loaded.value));
+		        if (entry == null) return null;
+		        if (System.nanoTime() - entry.loadedAt > refreshAfterNanos) refreshAsync(key, entry.value);
+		        return entry.value;                                      // old value is served while the refresh runs
+		    }
+
+		    V get(K key, Function<? super K, ? extends V> loader) {
+		        return get(key, loader, value -> true);
+		    }
+
+		    // Cached value failing isCurrent is treated as a miss; the single-flight reload replaces it in place
+		    V get(K key, Function<? super K, ? extends V> loader, Predicate<? super V> isCurrent) {
+		        V value = getIfPresent(key, isCurrent);
+		        return value != null ? value : load(key, loader, isCurrent);
+		    }
+
+		    void put(K key, V value) { cache.put(key, new Loaded<>(value, System.nanoTime())); }
+
+		    void invalidate(K key) { cache.invalidate(key); }
+
+		    void invalidateAll() { cache.invalidateAll(); }
+
+		    // Miss: first caller loads, everyone else missing the same key waits for that load
+		    private V load(K key, Function<? super K, ? extends V> loader, Predicate<? super V> isCurrent) {
+		        CompletableFuture<V> mine = new CompletableFuture<>();
+		        CompletableFuture<V> running = inFlight.putIfAbsent(key, mine);
+		        if (running != null) {
+		            coalesced.increment();
+		            return join(running);
+		        }
+		        try {
+		            // Another load may have finished (and left inFlight) between our miss and putIfAbsent; the miss is counted already
+		            Loaded<V> cached = cache.peek(key);
+		            V value = cached != null && isCurrent.test(cached.value) ? cached.value : timedLoad(key, loader);
+		            mine.complete(value);
+		            return value;
+		        } catch (RuntimeException | Error e) {
+		            mine.completeExceptionally(e);                       // waiters see the same failure, next miss retries
+		            throw e;
+		        } finally {
+		            inFlight.remove(key, mine);                          // after put → later callers hit the cache
+		        }
+		    }
+
+		    // At most one refresh per key (shares the in-flight slot with loads); failure keeps the old value until it expires
+		    private void refreshAsync(K key, V oldValue) {
+		        CompletableFuture<V> mine = new CompletableFuture<>();
+		        if (inFlight.putIfAbsent(key, mine) != null) return;
+		        refreshes.increment();
+		        try {
+		            refreshExecutor.execute(() -> {
+		                try {
+		                    mine.complete(timedLoad(key, reloader));    // timedLoad has written the cache already
+		                } catch (RuntimeException | Error e) {
+		                    refreshFailed(key, oldValue, mine, e);
+		                } finally {
+		                    inFlight.remove(key, mine);
+		                }
+		            });
+		        } catch (RejectedExecutionException e) {                 // refresh pool full → try again on a later read
+		            refreshFailed(key, oldValue, mine, e);
+		            inFlight.remove(key, mine);
+		        }
+		    }
+
+		    // Callers that joined the refresh (miss or stale value meanwhile) get the old value, not the refresh error
+		    private void refreshFailed(K key, V oldValue, CompletableFuture<V> refresh, Throwable e) {
+		        refreshFailures.increment();
+		        System.err.println("[" + name + "] refresh of " + key + " failed, serving the old value: " + e);
+		        refresh.complete(oldValue);
+		    }
+
+		    private V timedLoad(K key, Function<? super K, ? extends V> loader) {
+		        long start = cache.loadTime.start();
+		        V value = loader.apply(key);
+		        cache.loadTime.stop(start);
+		        if (value != null) put(key, value); else cache.invalidate(key);
+		        return value;
+		    }
+
+		    private static <V> V join(CompletableFuture<V> future) {
+		        try {
+		            return future.join();
+		        } catch (CompletionException e) {
+		            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+		            throw e;
+		        }
+		    }
+		}
+
+		import java.util.concurrent.*;
+		import java.util.concurrent.atomic.*;
+
+		public class StampedeDemo {
+
+		    static final AtomicInteger dbCalls = new AtomicInteger();
+
+		    static String fetchProductFromDb(String productId) {
+		        dbCalls.incrementAndGet();
+		        try { Thread.sleep(50); } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+		        return "Laptop";
+		    }
+
+		    public static void main(String[] args) throws Exception {
+		        long ttl = TimeUnit.MILLISECONDS.toNanos(500);
+
+		        // 1) 100 concurrent requests for a key that is not cached (same as right after it expires)
+		        TinyLfuCache<String, String> plain = new TinyLfuCache<>("plain", 1_000, (k, v) -> 1, (k, v) -> ttl);
+		        System.out.println("cache-aside      : " + stampede(id -> {
+		            String value = plain.getIfPresent(id);                  // check, load, put: every miss goes to the DB
+		            if (value == null) plain.put(id, value = fetchProductFromDb(id));
+		            return value;
+		        }) + " DB calls");
+		        RefreshingCache<String, String> flight = new RefreshingCache<>("products", 1_000, (k, v) -> 1, (k, v) -> ttl,
+		                Long.MAX_VALUE, StampedeDemo::fetchProductFromDb, Runnable::run);
+		        System.out.println("single-flight    : " + stampede(id -> flight.get(id, StampedeDemo::fetchProductFromDb)) + " DB calls");
+
+		        // 2) one reader every 5 ms for 3 s; TTL 500 ms, refresh after 300 ms
+		        ExecutorService refreshPool = Executors.newSingleThreadExecutor();
+		        RefreshingCache<String, String> ahead = new RefreshingCache<>("products-ahead", 1_000, (k, v) -> 1, (k, v) -> ttl,
+		                TimeUnit.MILLISECONDS.toNanos(300), StampedeDemo::fetchProductFromDb, refreshPool);
+		        System.out.println("expire only      : " + readFor3s(id -> plain.get(id, StampedeDemo::fetchProductFromDb)));
+		        System.out.println("refresh-ahead    : " + readFor3s(id -> ahead.get(id, StampedeDemo::fetchProductFromDb)));
+		        refreshPool.shutdown();
+		    }
+
+		    static int stampede(java.util.function.Function<String, String> get) throws Exception {
+		        dbCalls.set(0);
+		        ExecutorService pool = Executors.newFixedThreadPool(100);
+		        CountDownLatch start = new CountDownLatch(1);
+		        for (int i = 0; i < 100; i++) pool.execute(() -> {
+		            try { start.await(); } catch (InterruptedException e) { return; }
+		            get.apply("P-42");
+		        });
+		        start.countDown();
+		        pool.shutdown();
+		        pool.awaitTermination(10, TimeUnit.SECONDS);
+		        return dbCalls.get();
+		    }
+
+		    static String readFor3s(java.util.function.Function<String, String> get) throws Exception {
+		        get.apply("P-7");                                        // warm
+		        dbCalls.set(0);
+		        long slowReads = 0, end = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+		        while (System.nanoTime() < end) {
+		            long t = System.nanoTime();
+		            get.apply("P-7");
+		            if (System.nanoTime() - t > TimeUnit.MILLISECONDS.toNanos(10)) slowReads++;
+		            Thread.sleep(5);
+		        }
+		        return dbCalls.get() + " DB calls, " + slowReads + " reads blocked on the DB";
+		    }
+		}
+
+		Sample output (JDK 17, DB call = 50 ms, TTL 500 ms):-
+			cache-aside      : 100 DB calls
+			single-flight    : 1 DB calls
+			expire only      : 5 DB calls, 5 reads blocked on the DB
+			refresh-ahead    : 8 DB calls, 0 reads blocked on the DB
+
+		Plugging it into Spring:-
+
+		// Adapter now delegates to RefreshingCache (only the changed methods shown)
+		public class TinyLfuSpringCache extends AbstractValueAdaptingCache {
+
+		    private final String name;
+		    private final RefreshingCache<Object, Object> cache;
+
+		    @Override
+		    protected Object lookup(Object key) { return cache.getIfPresent(key); }
+
+		    @Override
+		    @SuppressWarnings("unchecked")
+		    public <T> T get(Object key, Callable<T> valueLoader) {
+		        return (T) fromStoreValue(cache.get(key, k -> {
+		            try {
+		                return toStoreValue(valueLoader.call());
+		            } catch (Exception e) {
+		                throw new ValueRetrievalException(key, valueLoader, e);
+		            }
+		        }));
+		    }
+		}
+
+		@Configuration
+		@EnableCaching
+		public class CacheConfig {
+
+		    // Small bounded pool: if it is full the refresh is skipped and retried on a later read.
+		    // A bean so the context shuts it down; built inline in cacheManager() it would never be stopped
+		    @Bean(destroyMethod = "shutdown")
+		    public ThreadPoolExecutor productRefreshPool() {
+		        return new ThreadPoolExecutor(2, 2, 0, TimeUnit.SECONDS, new ArrayBlockingQueue<>(1_000));
+		    }
+
+		    @Bean
+		    public CacheManager cacheManager(ProductRepository productRepository, ThreadPoolExecutor productRefreshPool) {
+		        RefreshingCache<Object, Object> products = new RefreshingCache<>(
+		                "products",
+		                10_000,
+		                (key, value) -> 1,
+		                (key, value) -> value == NullValue.INSTANCE ? TimeUnit.SECONDS.toNanos(30) : TimeUnit.MINUTES.toNanos(10),
+		                TimeUnit.MINUTES.toNanos(8),                      // refresh hot products 2 min before they expire
+		                key -> productRepository.findById((String) key).map(p -> (Object) p).orElse(NullValue.INSTANCE),
+		                productRefreshPool);
+		        SimpleCacheManager manager = new SimpleCacheManager();
+		        manager.setCaches(List.of(new TinyLfuSpringCache("products", products)));
+		        return manager;
+		    }
+		}
 		
 @CacheEvict
 
@@ -2496,6 +7655,212 @@ Primary VS Qaulifier
 					System.out.println("Clearing all product cache");
 				}
 			}
+
+	O(1) @CacheEvict(allEntries = true) with Generations:-
+		-clearCache() → Cache.clear() → invalidateAll() walks every entry under the policy lock (~65-95 ms for 100k here),
+		 puts wait meanwhile, and afterwards every product misses at once → latency spike + cold cache + DB burst.
+		-Generation stamping: one AtomicLong clock. Each entry stores the clock value read when its load STARTED.
+			invalidateAll() → clearedAt = max(clearedAt, clock.incrementAndGet()) → O(1), nothing is walked or locked.
+			 max, not a plain set: two clears racing can finish in either order, the watermark must never move back
+			  (a lower value would make entries stale under the later clear look current again).
+			Read: entry.generation < clearedAt → stale → treated as a miss → single-flight reload overwrites it in place.
+			 The check runs before the hit counter, the sketch and the read buffer → a stale read is one miss + one
+			 cache_stale_reads_total, hit ratio drops after a clear, and the stale entry gains no frequency.
+			Clock is read before the DB call → a clear that lands while a load is running marks that load stale too
+			 (plain evict + put can leave the pre-clear value in the cache).
+			get() checks the result again: a caller that joined a load started before the clear gets a stale value
+			 from it → it loads once more instead of returning it.
+		-Stale entries are never served but still take space until reloaded, evicted by W-TinyLFU (they are no
+		 longer read, so they lose on frequency) or expired. purge() still does the full walk for off-peak cleanup.
+		-Tag (group) eviction: tagger(value) → tag, e.g. category. invalidateTag("laptops") →
+		 tagClearedAt.merge(tag, clock.incrementAndGet(), Math::max), same never-backwards rule.
+			 Entry is stale if older than clearedAt OR older than its tag's clearedAt → only that category reloads.
+		 Bounded: invalidateAll() drops tag watermarks it covers; more than MAX_TAGS tags → one global clear instead.
+		-Reloads after a clear are spread out: only keys that are actually read reload, one DB call per key (single-flight).
+		-put() after the method ran (@Cacheable without sync) stamps at put time, not load start → prefer sync = true.
+		Example:-
+
+			import java.util.concurrent.*;
+			import java.util.concurrent.atomic.AtomicLong;
+			import java.util.function.*;
+
+			// O(1) invalidation: entries carry the clock value from when their load started, clear() just moves a watermark
+			final class GenerationalCache<K, V> {
+
+			    static final class Stamped<V> {
+			        final V value;
+			        final String tag;              // e.g. product category, null = no group
+			        final long generation;
+
+			        Stamped(V value, String tag, long generation) {
+			            this.value = value;
+			            this.tag = tag;
+			            this.generation = generation;
+			        }
+			    }
+
+			    private final RefreshingCache<K, Stamped<V>> cache;
+			    private final Function<? super V, String> tagger;
+			    private final AtomicLong clock = new AtomicLong();
+			    private final AtomicLong clearedAt = new AtomicLong();            // entries older than this are stale
+			    private final ConcurrentHashMap<String, Long> tagClearedAt = new ConcurrentHashMap<>();
+			    private static final int MAX_TAGS = 10_000;                        // more → folded into one global clear
+
+			    GenerationalCache(String name, long maxWeight, ToIntBiFunction<K, V> weigher, ToLongBiFunction<K, V> expireAfterWriteNanos,
+			                      long refreshAfterNanos, Function<? super K, ? extends V> reloader, Executor refreshExecutor,
+			                      Function<? super V, String> tagger) {
+			        this.tagger = tagger;
+			        this.cache = new RefreshingCache<>(name, maxWeight,
+			                (k, stamped) -> weigher.applyAsInt(k, stamped.value),
+			                (k, stamped) -> expireAfterWriteNanos.applyAsLong(k, stamped.value),
+			                refreshAfterNanos, stamping(reloader), refreshExecutor);
+			        MetricsRegistry.GLOBAL.gauge("cache_generation", () -> clock.get(), "cache", name);   // stale reads: TinyLfuCache
+			    }
+
+			    V getIfPresent(K key) {
+			        Stamped<V> stamped = cache.getIfPresent(key, this::isCurrent);
+			        return stamped == null ? null : stamped.value;
+			    }
+
+			    // Stale entry = miss → single-flight reload overwrites it in place
+			    V get(K key, Function<? super K, ? extends V> loader) {
+			        while (true) {
+			            Stamped<V> stamped = cache.get(key, stamping(loader), this::isCurrent);
+			            if (stamped == null) return null;
+			            if (isCurrent(stamped)) return stamped.value;
+			            // Joined (or ran) a load that started before a clear → its value is stale already, load again
+			        }
+			    }
+
+			    void put(K key, V value) { cache.put(key, new Stamped<>(value, tagger.apply(value), clock.get())); }
+
+			    void invalidate(K key) { cache.invalidate(key); }
+
+			    // @CacheEvict(allEntries = true): one increment, no walk, no lock.
+			    // max → a clear that got its generation earlier but writes later can't move the watermark back
+			    // Tag watermarks at or below the new clearedAt are covered by it → dropped (conditional remove, races are safe)
+			    void invalidateAll() {
+			        long generation = clearedAt.accumulateAndGet(clock.incrementAndGet(), Math::max);
+			        tagClearedAt.values().removeIf(tagGeneration -> tagGeneration <= generation);
+			    }
+
+			    // Group eviction, e.g. all products of one category after a price update
+			    void invalidateTag(String tag) {
+			        tagClearedAt.merge(tag, clock.incrementAndGet(), Math::max);
+			        if (tagClearedAt.size() > MAX_TAGS) invalidateAll();   // bounded map: too many groups → clear everything
+			    }
+
+			    // Physically drops everything (stale entries included), for off-peak use if stale entries hold too much memory
+			    void purge() { cache.invalidateAll(); }
+
+			    // Generation is read BEFORE the load → a clear() that happens while the DB call runs makes the result stale
+			    private Function<K, Stamped<V>> stamping(Function<? super K, ? extends V> loader) {
+			        return key -> {
+			            long generation = clock.get();
+			            V value = loader.apply(key);
+			            return value == null ? null : new Stamped<>(value, tagger.apply(value), generation);
+			        };
+			    }
+
+			    private boolean isCurrent(Stamped<V> stamped) {
+			        return stamped.generation >= clearedAt.get()
+			                && (stamped.tag == null || stamped.generation >= tagClearedAt.getOrDefault(stamped.tag, 0L));
+			    }
+			}
+
+			import java.util.concurrent.atomic.AtomicInteger;
+
+			public class ClearDemo {
+
+			    static final AtomicInteger dbCalls = new AtomicInteger();
+
+			    static String fetchProductFromDb(String productId) {
+			        dbCalls.incrementAndGet();
+			        return "category-" + Math.floorMod(productId.hashCode(), 10);                // value = its category, enough for the demo
+			    }
+
+			    public static void main(String[] args) {
+			        GenerationalCache<String, String> products = new GenerationalCache<>("products", 200_000, (k, v) -> 1,
+			                (k, v) -> Long.MAX_VALUE / 4, Long.MAX_VALUE, ClearDemo::fetchProductFromDb, Runnable::run, v -> v);
+			        products.invalidateAll();                                      // warm-up, cache still empty
+			        for (int i = 0; i < 100_000; i++) products.get("P-" + i, ClearDemo::fetchProductFromDb);
+
+			        long t = System.nanoTime();
+			        products.invalidateAll();
+			        System.out.printf("generation bump : %,d ns%n", System.nanoTime() - t);
+
+			        dbCalls.set(0);
+			        products.get("P-1", ClearDemo::fetchProductFromDb);
+			        products.get("P-1", ClearDemo::fetchProductFromDb);
+			        System.out.println("P-1 read twice after clear → DB calls: " + dbCalls.get());
+
+			        for (int i = 0; i < 100_000; i++) products.get("P-" + i, ClearDemo::fetchProductFromDb);
+			        dbCalls.set(0);
+			        products.invalidateTag("category-3");
+			        for (int i = 0; i < 100_000; i++) products.get("P-" + i, ClearDemo::fetchProductFromDb);
+			        System.out.println("100,000 reads after invalidateTag(category-3) → DB calls: " + dbCalls.get());
+
+			        t = System.nanoTime();
+			        products.purge();
+			        System.out.printf("full walk (purge): %,d ns%n", System.nanoTime() - t);
+			    }
+			}
+
+		Sample output (JDK 17, 100,000 entries, single calls, numbers vary per run):-
+			generation bump : 55,733 ns
+			P-1 read twice after clear → DB calls: 1
+			100,000 reads after invalidateTag(category-3) → DB calls: 10000
+			full walk (purge): 79,531,481 ns
+
+		Plugging it into Spring:-
+
+			// Adapter delegates to GenerationalCache; clear() is now O(1)
+			public class TinyLfuSpringCache extends AbstractValueAdaptingCache {
+
+			    private final String name;
+			    private final GenerationalCache<Object, Object> cache;
+
+			    @Override
+			    public void clear() { cache.invalidateAll(); }
+
+			    @Override
+			    public boolean invalidate() {                     // Spring 5.2+: immediate clear, also O(1) here
+			        cache.invalidateAll();
+			        return true;
+			    }
+			}
+
+			// CacheConfig: same arguments as before + tagger
+			GenerationalCache<Object, Object> products = new GenerationalCache<>(
+			        "products", 10_000, (key, value) -> 1,
+			        (key, value) -> value == NullValue.INSTANCE ? TimeUnit.SECONDS.toNanos(30) : TimeUnit.MINUTES.toNanos(10),
+			        TimeUnit.MINUTES.toNanos(8),
+			        key -> productRepository.findById((String) key).map(p -> (Object) p).orElse(NullValue.INSTANCE),
+			        refreshPool,
+			        value -> value instanceof Product ? ((Product) value).getCategory() : null);
+
+			@Service
+			public class ProductService {
+
+			    private final GenerationalCache<Object, Object> productCache;
+
+			    public ProductService(CacheManager cacheManager) {
+			        this.productCache = (GenerationalCache<Object, Object>) cacheManager.getCache("products").getNativeCache();
+			    }
+
+			    // Unchanged, now O(1)
+			    @CacheEvict(value = "products", allEntries = true)
+			    public void clearCache() {
+			        System.out.println("Clearing all product cache");
+			    }
+
+			    // @CacheEvict has no group eviction → call the cache directly
+			    public void repriceCategory(String category, int percent) {
+			        System.out.println("Updating prices in DB for " + category);
+			        productCache.invalidateTag(category);
+			    }
+			}
+
 | Feature    | `@Cacheable`                        | `@CacheEvict`                    |
 | ---------- | ----------------------------------- | -------------------------------- |
 | Purpose    | Store method result in cache        | Remove entries from cache        |